@@ -29,6 +29,10 @@ public class LogViewerClient implements ClientModInitializer {
                 LogViewerHud.getInstance().toggle();
             }
 
+            while (KeyBindings.TOGGLE_STATS.consumeClick()) {
+                LogViewerHud.getInstance().toggleStats();
+            }
+
             while (KeyBindings.TOGGLE_MOUSE_CONTROL.consumeClick()) {
                 LogViewerHud hud = LogViewerHud.getInstance();
                 if (hud.isVisible()) {
@@ -0,0 +1,52 @@
+package dev.logviewer.client.gui;
+
+import java.util.Arrays;
+
+/*
+ * Direct-mapped cache of display strings keyed by entry sequence. Sequences
+ * are never reused within a source, so an evicted entry simply stops being
+ * asked for and its slot gets overwritten; a width change or a switch to
+ * another source drops everything at once. The repeat count is part of the
+ * key since a collapsed line's text changes as repeats come in.
+ */
+final class LineCache {
+
+    private final long[] sequences;
+    private final int[] repeats;
+    private final String[] lines;
+    private final int mask;
+    private int width = -1;
+
+    LineCache(int size) {
+        int capacity = Integer.highestOneBit(Math.max(2, size - 1)) << 1;
+        this.sequences = new long[capacity];
+        this.repeats = new int[capacity];
+        this.lines = new String[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(sequences, -1);
+    }
+
+    String get(long seq, int repeatCount, int width) {
+        if (width != this.width) {
+            clear();
+            this.width = width;
+            return null;
+        }
+        int index = (int) (seq & mask);
+        return sequences[index] == seq && repeats[index] == repeatCount
+            ? lines[index]
+            : null;
+    }
+
+    void put(long seq, int repeatCount, String line) {
+        int index = (int) (seq & mask);
+        sequences[index] = seq;
+        repeats[index] = repeatCount;
+        lines[index] = line;
+    }
+
+    void clear() {
+        Arrays.fill(sequences, -1);
+        Arrays.fill(lines, null);
+    }
+}
@@ -1,11 +1,16 @@
 package dev.logviewer.client.gui;
 
+import dev.logviewer.LogViewerMod;
+import dev.logviewer.log.FilteredView;
+import dev.logviewer.log.JfrEvents;
 import dev.logviewer.log.LogBuffer;
 import dev.logviewer.log.LogEntry;
-import java.util.List;
+import dev.logviewer.log.LogLevel;
+import dev.logviewer.log.Metrics;
+import dev.logviewer.log.SpillStore;
+import dev.logviewer.log.TemplateMiner;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.GuiGraphics;
-import org.apache.logging.log4j.Level;
 import org.joml.Matrix3x2fStack;
 
 public class LogViewerHud {
@@ -32,16 +37,24 @@ public class LogViewerHud {
     private static final int BASE_MAX_HEIGHT = 300;
     private static final int BASE_WIDTH = 140;
     private static final int BASE_HEIGHT = 60;
+    private static final long STATS_REFRESH_MILLIS = 500;
 
     private boolean visible = false;
     private boolean mouseControlActive = false;
+    private boolean showStats = false;
+    private String statsLine = "";
+    private long statsRefreshedAt = 0;
+    // Rows drawn and line cache hits in the current frame, for JFR.
+    private int frameRows;
+    private int frameCacheHits;
 
     private double windowXPercent = 0.01;
     private double windowYPercent = 0.01;
     private double windowWidthPercent = 0.33;
     private double windowHeightPercent = 0.25;
 
-    private double scrollOffset = 0;
+    private long anchorSequence = 0;
+    private double pendingScroll = 0;
     private boolean autoScroll = true;
 
     private boolean showInfo = true;
@@ -49,6 +62,14 @@ public class LogViewerHud {
     private boolean showError = true;
     private boolean showDebug = true;
 
+    // No index: the HUD never searches text, and updating the index from
+    // here would put it on the render thread every frame.
+    private final FilteredView filteredView =
+        new FilteredView(LogBuffer.getInstance());
+    private final LineCache lineCache = new LineCache(512);
+    private final boolean showMillis =
+        LogViewerMod.getConfig().displayShowMillis();
+
     private boolean isDragging = false;
     private boolean isResizing = false;
     private int dragOffsetX;
@@ -73,6 +94,11 @@ public class LogViewerHud {
         }
     }
 
+    public void toggleStats() {
+        showStats = !showStats;
+        statsRefreshedAt = 0;
+    }
+
     public boolean isVisible() {
         return visible;
     }
@@ -88,6 +114,21 @@ public class LogViewerHud {
     ) {
         if (!visible) return;
 
+        long start = Metrics.start();
+        JfrEvents.FrameRender event = new JfrEvents.FrameRender("hud");
+        event.begin();
+        frameRows = 0;
+        frameCacheHits = 0;
+        renderWindow(graphics, screenWidth, screenHeight);
+        event.finish(frameRows, frameCacheHits);
+        Metrics.HUD_RENDER.record(start);
+    }
+
+    private void renderWindow(
+        GuiGraphics graphics,
+        int screenWidth,
+        int screenHeight
+    ) {
         Minecraft mc = Minecraft.getInstance();
 
         double guiScale = mc.getWindow().getGuiScale();
@@ -189,20 +230,16 @@ public class LogViewerHud {
 
         pose.popMatrix();
 
-        List<LogEntry> entries = getFilteredEntries();
+        FilteredView entries = getFilteredEntries();
         int logAreaY = windowY + headerHeight + 2;
         int logAreaHeight = windowHeight - headerHeight - 4;
+        if (showStats) {
+            logAreaHeight -= lineHeight;
+        }
         int maxVisibleLines = logAreaHeight / lineHeight;
 
-        if (autoScroll && !entries.isEmpty()) {
-            scrollOffset = Math.max(0, entries.size() - maxVisibleLines);
-        }
-
-        int startIndex = (int) scrollOffset;
-        int endIndex = Math.min(
-            startIndex + maxVisibleLines + 1,
-            entries.size()
-        );
+        int startIndex = scrollToAnchor(entries, maxVisibleLines);
+        long evicted = autoScroll ? 0 : entries.coveredFrom() - anchorSequence;
 
         graphics.enableScissor(
             windowX + 1,
@@ -212,22 +249,65 @@ public class LogViewerHud {
         );
 
         int maxChars = (int) ((windowWidth - padding * 2) / (6 * textScale));
+        int textX = (int) ((windowX + padding) * invScale);
 
         pose.pushMatrix();
         pose.scale(textScale, textScale);
 
+        int firstLineY = logAreaY;
+        if (evicted > 0) {
+            graphics.drawString(
+                mc.font,
+                evicted + " evicted above",
+                textX,
+                (int) (firstLineY * invScale),
+                DIM_TEXT,
+                false
+            );
+            firstLineY += lineHeight;
+        }
+
+        LogBuffer buffer = LogBuffer.getInstance();
+        int endIndex = Math.min(
+            startIndex + maxVisibleLines + 1,
+            entries.size()
+        );
+
         for (int i = startIndex; i < endIndex; i++) {
-            LogEntry entry = entries.get(i);
-            int y = logAreaY + (i - startIndex) * lineHeight;
+            long seq = entries.sequenceAt(i);
+            int level = buffer.levelAt(seq);
+            if (level < 0) continue;
+
+            int repeatCount = buffer.repeatCountAt(seq);
+            String text = lineCache.get(seq, repeatCount, maxChars);
+            if (text == null) {
+                LogEntry entry = buffer.get(seq);
+                if (entry == null) continue;
+                text = formatLogLine(entry, maxChars);
+                lineCache.put(seq, repeatCount, text);
+            } else {
+                frameCacheHits++;
+            }
+            frameRows++;
 
-            int color = getColorForLevel(entry.level());
-            String text = formatLogLine(entry, maxChars);
+            int y = firstLineY + (i - startIndex) * lineHeight;
+            int color = getColorForLevel(LogLevel.byOrdinal(level));
 
-            int textX = (int) ((windowX + padding) * invScale);
             int textY = (int) (y * invScale);
             graphics.drawString(mc.font, text, textX, textY, color, false);
         }
 
+        if (showStats) {
+            graphics.drawString(
+                mc.font,
+                statsLine(maxChars),
+                textX,
+                (int) ((logAreaY + logAreaHeight) * invScale),
+                DIM_TEXT,
+                false
+            );
+        }
+
         pose.popMatrix();
 
         graphics.disableScissor();
@@ -244,18 +324,55 @@ public class LogViewerHud {
         }
     }
 
+    // Same sequence anchoring as the screen, without paging from disk.
+    private int scrollToAnchor(FilteredView entries, int maxVisibleLines) {
+        int maxRow = Math.max(0, entries.size() - maxVisibleLines);
+        if (autoScroll) {
+            if (entries.size() > 0) {
+                anchorSequence = entries.sequenceAt(maxRow);
+            }
+            return maxRow;
+        }
+
+        int delta = (int) pendingScroll;
+        pendingScroll -= delta;
+        int row = entries.rowOf(anchorSequence) + delta;
+        row = Math.max(0, Math.min(row, maxRow));
+        if (delta != 0 && entries.size() > 0) {
+            anchorSequence = entries.sequenceAt(row);
+        }
+        return row;
+    }
+
+    // Rebuilt twice a second rather than every frame.
+    private String statsLine(int maxChars) {
+        long now = System.currentTimeMillis();
+        if (now - statsRefreshedAt > STATS_REFRESH_MILLIS) {
+            statsLine = Metrics.isEnabled()
+                ? Metrics.summaryLine()
+                : "metrics disabled";
+            statsRefreshedAt = now;
+        }
+        return statsLine.length() > maxChars
+            ? statsLine.substring(0, Math.max(0, maxChars - 2)) + ".."
+            : statsLine;
+    }
+
     private String formatLogLine(LogEntry entry, int maxChars) {
-        String levelChar = switch (entry.level().name()) {
-            case "WARN" -> "W";
-            case "ERROR", "FATAL" -> "E";
-            case "DEBUG", "TRACE" -> "D";
+        String levelChar = switch (entry.logLevel()) {
+            case WARN -> "W";
+            case ERROR, FATAL -> "E";
+            case DEBUG, TRACE -> "D";
             default -> "I";
         };
 
-        String time = entry.getFormattedTime();
+        String time = entry.getFormattedTime(showMillis);
         String msg = entry.message();
 
-        String line = time + " " + levelChar + " " + msg;
+        String repeats = entry.repeatCount() > 1
+            ? "(x" + entry.repeatCount() + ") "
+            : "";
+        String line = time + " " + levelChar + " " + repeats + msg;
         if (line.length() > maxChars) {
             line = line.substring(0, maxChars - 2) + "..";
         }
@@ -299,19 +416,19 @@ public class LogViewerHud {
         );
     }
 
-    private int getColorForLevel(Level level) {
-        return switch (level.name()) {
-            case "WARN" -> WARN_COLOR;
-            case "ERROR", "FATAL" -> ERROR_COLOR;
-            case "DEBUG", "TRACE" -> DEBUG_COLOR;
+    private int getColorForLevel(LogLevel level) {
+        return switch (level) {
+            case WARN -> WARN_COLOR;
+            case ERROR, FATAL -> ERROR_COLOR;
+            case DEBUG, TRACE -> DEBUG_COLOR;
             default -> INFO_COLOR;
         };
     }
 
-    private List<LogEntry> getFilteredEntries() {
-        return LogBuffer.getInstance().getFiltered(entry ->
-            entry.matchesFilter("", showInfo, showWarn, showError, showDebug)
-        );
+    private FilteredView getFilteredEntries() {
+        filteredView.setFilter("", showInfo, showWarn, showError, showDebug);
+        filteredView.refresh();
+        return filteredView;
     }
 
     public boolean handleMouseClick(double mouseX, double mouseY, int button) {
@@ -451,11 +568,6 @@ public class LogViewerHud {
         double guiScale = mc.getWindow().getGuiScale();
         float scaleFactor = (float) (4.0 / guiScale);
 
-        int headerHeight = Math.max(
-            6,
-            (int) (BASE_HEADER_HEIGHT * scaleFactor)
-        );
-        int lineHeight = Math.max(4, (int) (BASE_LINE_HEIGHT * scaleFactor));
         int minWidth = (int) (BASE_MIN_WIDTH * scaleFactor);
         int minHeight = (int) (BASE_MIN_HEIGHT * scaleFactor);
         int maxWidth = (int) (BASE_MAX_WIDTH * scaleFactor);
@@ -476,14 +588,7 @@ public class LogViewerHud {
         ) {
             if (mouseControlActive) {
                 autoScroll = false;
-                scrollOffset = Math.max(0, scrollOffset - amount * 3);
-                List<LogEntry> entries = getFilteredEntries();
-                int logAreaHeight = windowHeight - headerHeight - 4;
-                int maxVisibleLines = logAreaHeight / lineHeight;
-                scrollOffset = Math.min(
-                    scrollOffset,
-                    Math.max(0, entries.size() - maxVisibleLines)
-                );
+                pendingScroll -= amount * 3;
             }
             return mouseControlActive;
         }
@@ -492,6 +597,14 @@ public class LogViewerHud {
 
     public void clear() {
         LogBuffer.getInstance().clear();
+        SpillStore spill = SpillStore.getInstance();
+        if (spill != null) {
+            spill.clear();
+        }
+        TemplateMiner miner = TemplateMiner.getInstance();
+        if (miner != null) {
+            miner.clear();
+        }
     }
 
     public void toggleFilter(int index) {
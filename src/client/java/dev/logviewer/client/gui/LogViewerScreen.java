@@ -1,21 +1,40 @@
 package dev.logviewer.client.gui;
 
+import dev.logviewer.LogViewerMod;
+import dev.logviewer.log.FilteredView;
+import dev.logviewer.log.JfrEvents;
 import dev.logviewer.log.LogBuffer;
 import dev.logviewer.log.LogEntry;
-import java.io.FileWriter;
+import dev.logviewer.log.LogExporter;
+import dev.logviewer.log.LogFile;
+import dev.logviewer.log.LogLevel;
+import dev.logviewer.log.Metrics;
+import dev.logviewer.log.SpillStore;
+import dev.logviewer.log.TemplateMiner;
+import dev.logviewer.log.TrigramIndex;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.GuiGraphics;
 import net.minecraft.client.gui.components.Button;
 import net.minecraft.client.gui.components.EditBox;
+import net.minecraft.client.gui.components.toasts.SystemToast;
 import net.minecraft.client.gui.screens.Screen;
 import net.minecraft.client.input.KeyEvent;
 import net.minecraft.client.input.MouseButtonEvent;
 import net.minecraft.network.chat.Component;
-import org.apache.logging.log4j.Level;
 import org.lwjgl.glfw.GLFW;
 
 public class LogViewerScreen extends Screen {
@@ -33,13 +52,21 @@ public class LogViewerScreen extends Screen {
     private static final int PADDING = 8;
     private static final int HEADER_HEIGHT = 30;
     private static final int FOOTER_HEIGHT = 30;
+    private static final int HISTORY_PAGE = 2048;
+    private static final long GROUP_REFRESH_MILLIS = 500;
+    private static final int STACK_INDENT = PADDING * 2;
+    private static final String STACK_MARKER = "[+] ";
+
+    private static final SystemToast.SystemToastId EXPORT_TOAST =
+        new SystemToast.SystemToastId();
 
     private int windowX;
     private int windowY;
     private int windowWidth;
     private int windowHeight;
 
-    private double scrollOffset = 0;
+    private long anchorSequence = 0;
+    private double pendingScroll = 0;
     private boolean autoScroll = true;
     private String filterText = "";
 
@@ -48,7 +75,30 @@ public class LogViewerScreen extends Screen {
     private boolean showError = true;
     private boolean showDebug = true;
 
+    private FilteredView filteredView = liveView();
+    private LogFile openFile;
+    private boolean grouped = false;
+    private List<TemplateMiner.Stats> groups = List.of();
+    private long groupsRefreshedAt = 0;
+    private double groupScroll = 0;
+    private final LineCache lineCache = new LineCache(512);
+    // Sequences whose stack traces are shown, and those traces' lines as
+    // drawn at stackWidth. Lines are only built for expanded rows.
+    private final Set<Long> expanded = new HashSet<>();
+    private final Map<Long, List<String>> stackLines = new HashMap<>();
+    private int stackWidth = -1;
+    // Sequence of the row each visible line belongs to, from the last frame.
+    private long[] lineOwners = new long[64];
+    private int drawnLines = 0;
+    private int drawnFirstY = 0;
+    // Rows drawn and line cache hits in the current frame, for JFR.
+    private int frameRows;
+    private int frameCacheHits;
+    private final boolean showMillis =
+        LogViewerMod.getConfig().displayShowMillis();
+
     private EditBox searchBox;
+    private Button sourceButton;
     private Button infoButton;
     private Button warnButton;
     private Button errorButton;
@@ -56,6 +106,7 @@ public class LogViewerScreen extends Screen {
     private Button clearButton;
     private Button exportButton;
     private Button autoScrollButton;
+    private Button groupButton;
 
     private boolean isDragging = false;
     private boolean isResizing = false;
@@ -132,6 +183,14 @@ public class LogViewerScreen extends Screen {
 
         updateFilterButtons();
 
+        sourceButton = addRenderableWidget(
+            Button.builder(sourceLabel(), b -> {
+                cycleSource();
+            })
+                .bounds(windowX + PADDING + 75, buttonY, 150, 20)
+                .build()
+        );
+
         int footerY = windowY + windowHeight - FOOTER_HEIGHT + 5;
 
         searchBox = new EditBox(
@@ -152,12 +211,13 @@ public class LogViewerScreen extends Screen {
             Button.builder(
                 Component.translatable("logviewer.button.clear"),
                 b -> {
-                    LogBuffer.getInstance().clear();
+                    clearLogs();
                 }
             )
                 .bounds(windowX + PADDING + 210, footerY, 50, 20)
                 .build()
         );
+        clearButton.active = openFile == null;
 
         exportButton = addRenderableWidget(
             Button.builder(
@@ -183,6 +243,19 @@ public class LogViewerScreen extends Screen {
                 .bounds(windowX + PADDING + 325, footerY, 70, 20)
                 .build()
         );
+
+        groupButton = addRenderableWidget(
+            Button.builder(
+                Component.literal(grouped ? "Group: ON" : "Group: OFF"),
+                b -> {
+                    setGrouped(!grouped);
+                }
+            )
+                .bounds(windowX + PADDING + 400, footerY, 70, 20)
+                .build()
+        );
+        groupButton.active =
+            openFile == null && TemplateMiner.getInstance() != null;
     }
 
     private void updateFilterButtons() {
@@ -206,6 +279,22 @@ public class LogViewerScreen extends Screen {
         int mouseX,
         int mouseY,
         float delta
+    ) {
+        long start = Metrics.start();
+        JfrEvents.FrameRender event = new JfrEvents.FrameRender("screen");
+        event.begin();
+        frameRows = 0;
+        frameCacheHits = 0;
+        renderWindow(graphics, mouseX, mouseY, delta);
+        event.finish(frameRows, frameCacheHits);
+        Metrics.SCREEN_RENDER.record(start);
+    }
+
+    private void renderWindow(
+        GuiGraphics graphics,
+        int mouseX,
+        int mouseY,
+        float delta
     ) {
         graphics.fill(
             windowX,
@@ -240,20 +329,21 @@ public class LogViewerScreen extends Screen {
             ACCENT_COLOR
         );
 
-        List<LogEntry> entries = getFilteredEntries();
         int logAreaY = windowY + HEADER_HEIGHT;
         int logAreaHeight = windowHeight - HEADER_HEIGHT - FOOTER_HEIGHT;
         int maxVisibleLines = logAreaHeight / LINE_HEIGHT;
 
-        if (autoScroll && !entries.isEmpty()) {
-            scrollOffset = Math.max(0, entries.size() - maxVisibleLines);
+        if (grouped) {
+            renderGroups(graphics, logAreaY, logAreaHeight, maxVisibleLines);
+            super.render(graphics, mouseX, mouseY, delta);
+            drawResizeHandle(graphics);
+            return;
         }
 
-        int startIndex = (int) scrollOffset;
-        int endIndex = Math.min(
-            startIndex + maxVisibleLines + 1,
-            entries.size()
-        );
+        int textWidth = windowWidth - PADDING * 2;
+        FilteredView entries = getFilteredEntries();
+        int startIndex = scrollToAnchor(entries, maxVisibleLines, textWidth);
+        long evicted = autoScroll ? 0 : entries.coveredFrom() - anchorSequence;
 
         graphics.enableScissor(
             windowX,
@@ -262,38 +352,111 @@ public class LogViewerScreen extends Screen {
             logAreaY + logAreaHeight
         );
 
-        for (int i = startIndex; i < endIndex; i++) {
-            LogEntry entry = entries.get(i);
-            int y = logAreaY + (i - startIndex) * LINE_HEIGHT + 2;
-
-            int color = getColorForLevel(entry.level());
-            String text = entry.getFormattedMessage();
+        int firstLineY = logAreaY + 2;
+        if (evicted > 0) {
+            graphics.drawString(
+                font,
+                evicted + " lines evicted above",
+                windowX + PADDING,
+                firstLineY,
+                0xFF888888,
+                false
+            );
+            firstLineY += LINE_HEIGHT;
+        }
 
-            if (text.length() > 120) {
-                text = text.substring(0, 117) + "...";
+        int maxLines = maxVisibleLines + 1;
+        if (lineOwners.length < maxLines) {
+            lineOwners = new long[maxLines * 2];
+        }
+        int line = 0;
+        for (int i = startIndex; i < entries.size() && line < maxLines; i++) {
+            long seq = entries.sequenceAt(i);
+            int level = entries.levelAt(i);
+            int y = firstLineY + line * LINE_HEIGHT;
+            lineOwners[line++] = seq;
+            if (level < 0) continue;
+
+            int repeatCount = entries.repeatCountAt(i);
+            String text = lineCache.get(seq, repeatCount, textWidth);
+            if (text == null) {
+                LogEntry entry = entries.get(i);
+                if (entry == null) continue;
+                text = truncateToWidth(
+                    (entry.thrown() != null ? STACK_MARKER : "") +
+                    entry.getFormattedMessage(showMillis),
+                    textWidth
+                );
+                lineCache.put(seq, repeatCount, text);
+            } else {
+                frameCacheHits++;
             }
+            frameRows++;
 
+            int color = getColorForLevel(LogLevel.byOrdinal(level));
             graphics.drawString(font, text, windowX + PADDING, y, color, false);
+
+            List<String> stack = stackLinesOf(entries, i, textWidth);
+            if (stack == null) continue;
+            int shown = shownStackLines(stack, maxVisibleLines);
+            for (int j = 0; j < shown && line < maxLines; j++) {
+                String frame = j == shown - 1 && shown < stack.size()
+                    ? "... " + (stack.size() - j) + " more lines"
+                    : stack.get(j);
+                graphics.drawString(
+                    font,
+                    frame,
+                    windowX + PADDING + STACK_INDENT,
+                    firstLineY + line * LINE_HEIGHT,
+                    color,
+                    false
+                );
+                lineOwners[line++] = seq;
+            }
         }
+        drawnLines = line;
+        drawnFirstY = firstLineY;
 
         graphics.disableScissor();
 
-        String statusText = String.format(
-            "Lines: %d / %d",
-            entries.size(),
-            LogBuffer.getInstance().size()
-        );
+        LogBuffer buffer = LogBuffer.getInstance();
+        String queryError = entries.query().error();
+        String statusText;
+        if (queryError != null) {
+            statusText = queryError;
+        } else if (openFile != null) {
+            statusText = String.format(
+                "%s%s%sLines: %d / %d",
+                exportStatus(),
+                fileStatus(openFile),
+                entries.isSearching() ? "Searching... " : "",
+                entries.size(),
+                openFile.size()
+            );
+        } else {
+            statusText = String.format(
+                "%s%sLines: %d / %d (%.1f MB)",
+                exportStatus(),
+                entries.isSearching() ? "Searching... " : "",
+                entries.size(),
+                buffer.size(),
+                buffer.retainedBytes() / (1024.0 * 1024.0)
+            );
+        }
         int statusWidth = font.width(statusText);
         graphics.drawString(
             font,
             statusText,
             windowX + windowWidth - statusWidth - PADDING,
             windowY + windowHeight - FOOTER_HEIGHT + 10,
-            0xFF888888
+            queryError != null ? ERROR_COLOR : 0xFF888888
         );
 
         super.render(graphics, mouseX, mouseY, delta);
+        drawResizeHandle(graphics);
+    }
 
+    private void drawResizeHandle(GuiGraphics graphics) {
         int resizeSize = 10;
         int resizeX = windowX + windowWidth - resizeSize;
         int resizeY = windowY + windowHeight - resizeSize;
@@ -306,6 +469,186 @@ public class LogViewerScreen extends Screen {
         );
     }
 
+    // One row per message template, most frequent first. Clicking a row
+    // searches for its lines.
+    private void renderGroups(
+        GuiGraphics graphics,
+        int logAreaY,
+        int logAreaHeight,
+        int maxVisibleLines
+    ) {
+        long now = System.currentTimeMillis();
+        if (now - groupsRefreshedAt > GROUP_REFRESH_MILLIS) {
+            TemplateMiner miner = TemplateMiner.getInstance();
+            groups = miner != null ? miner.snapshot(now) : List.of();
+            groupsRefreshedAt = now;
+        }
+        groupScroll = Math.max(
+            0,
+            Math.min(groupScroll, groups.size() - maxVisibleLines)
+        );
+
+        graphics.enableScissor(
+            windowX,
+            logAreaY,
+            windowX + windowWidth,
+            logAreaY + logAreaHeight
+        );
+        int textWidth = windowWidth - PADDING * 2;
+        int first = (int) groupScroll;
+        int last = Math.min(first + maxVisibleLines + 1, groups.size());
+        for (int i = first; i < last; i++) {
+            TemplateMiner.Stats group = groups.get(i);
+            String text = truncateToWidth(
+                String.format(
+                    "%8d  %7.1f/s  %s",
+                    group.count(),
+                    group.ratePerSecond(),
+                    group.template()
+                ),
+                textWidth
+            );
+            graphics.drawString(
+                font,
+                text,
+                windowX + PADDING,
+                logAreaY + 2 + (i - first) * LINE_HEIGHT,
+                INFO_COLOR,
+                false
+            );
+        }
+        graphics.disableScissor();
+
+        String statusText = exportStatus() + "Templates: " + groups.size();
+        graphics.drawString(
+            font,
+            statusText,
+            windowX + windowWidth - font.width(statusText) - PADDING,
+            windowY + windowHeight - FOOTER_HEIGHT + 10,
+            0xFF888888
+        );
+    }
+
+    private void setGrouped(boolean grouped) {
+        this.grouped = grouped;
+        groupsRefreshedAt = 0;
+        groupButton.setMessage(
+            Component.literal(grouped ? "Group: ON" : "Group: OFF")
+        );
+    }
+
+    // Scrolling is kept as the sequence of the top row rather than a row
+    // index, so the view stays on the same lines while new ones arrive and
+    // old ones are evicted underneath it.
+    private int scrollToAnchor(
+        FilteredView entries,
+        int maxVisibleLines,
+        int textWidth
+    ) {
+        int maxRow = bottomRow(entries, maxVisibleLines, textWidth);
+        if (autoScroll) {
+            if (entries.size() > 0) {
+                anchorSequence = entries.sequenceAt(maxRow);
+            }
+            return maxRow;
+        }
+
+        int delta = (int) pendingScroll;
+        pendingScroll -= delta;
+        int row = entries.rowOf(anchorSequence) + delta;
+        if (row < 0) {
+            // Past the top of memory; page older lines in from disk.
+            row += entries.loadOlder(HISTORY_PAGE);
+        }
+        row = Math.max(0, Math.min(row, maxRow));
+        if (delta != 0 && entries.size() > 0) {
+            anchorSequence = entries.sequenceAt(row);
+        }
+        return row;
+    }
+
+    // Top row that still shows the last one in full, counting expanded stacks.
+    private int bottomRow(
+        FilteredView entries,
+        int maxVisibleLines,
+        int textWidth
+    ) {
+        if (expanded.isEmpty()) {
+            return Math.max(0, entries.size() - maxVisibleLines);
+        }
+        int row = entries.size();
+        int lines = 0;
+        while (row > 0) {
+            List<String> stack = stackLinesOf(entries, row - 1, textWidth);
+            int height =
+                1 +
+                (stack != null ? shownStackLines(stack, maxVisibleLines) : 0);
+            if (lines > 0 && lines + height > maxVisibleLines) break;
+            lines += height;
+            row--;
+        }
+        return row;
+    }
+
+    // Trace lines of an expanded row, or null. Built the first time the row
+    // is laid out after expanding and dropped again when it collapses.
+    private List<String> stackLinesOf(
+        FilteredView entries,
+        int row,
+        int textWidth
+    ) {
+        if (expanded.isEmpty()) return null;
+        long seq = entries.sequenceAt(row);
+        if (!expanded.contains(seq)) return null;
+        if (textWidth != stackWidth) {
+            stackLines.clear();
+            stackWidth = textWidth;
+        }
+        List<String> lines = stackLines.get(seq);
+        if (lines == null) {
+            LogEntry entry = entries.get(row);
+            if (entry == null || entry.thrown() == null) return null;
+            lines = new ArrayList<>();
+            for (String line : entry.thrown().lines()) {
+                lines.add(
+                    truncateToWidth(
+                        line.replace("\t", "    "),
+                        textWidth - STACK_INDENT
+                    )
+                );
+            }
+            stackLines.put(seq, lines);
+        }
+        return lines;
+    }
+
+    // A trace taller than the log area is cut short with a "more" line.
+    private static int shownStackLines(
+        List<String> stack,
+        int maxVisibleLines
+    ) {
+        return Math.min(stack.size(), Math.max(1, maxVisibleLines - 1));
+    }
+
+    private void toggleStack(long seq) {
+        int row = filteredView.rowOf(seq);
+        if (row >= filteredView.size() || filteredView.sequenceAt(row) != seq) {
+            return;
+        }
+        LogEntry entry = filteredView.get(row);
+        if (entry == null || entry.thrown() == null) return;
+        if (!expanded.remove(seq)) {
+            expanded.add(seq);
+        }
+        stackLines.remove(seq);
+    }
+
+    private void collapseStacks() {
+        expanded.clear();
+        stackLines.clear();
+        drawnLines = 0;
+    }
+
     private void drawBorder(GuiGraphics graphics) {
         graphics.fill(
             windowX,
@@ -352,25 +695,153 @@ public class LogViewerScreen extends Screen {
         );
     }
 
-    private int getColorForLevel(Level level) {
-        return switch (level.name()) {
-            case "WARN" -> WARN_COLOR;
-            case "ERROR", "FATAL" -> ERROR_COLOR;
-            case "DEBUG", "TRACE" -> DEBUG_COLOR;
+    private String truncateToWidth(String text, int maxWidth) {
+        if (font.width(text) <= maxWidth) {
+            return text;
+        }
+        return font.plainSubstrByWidth(text, maxWidth - font.width("...")) + "...";
+    }
+
+    private int getColorForLevel(LogLevel level) {
+        return switch (level) {
+            case WARN -> WARN_COLOR;
+            case ERROR, FATAL -> ERROR_COLOR;
+            case DEBUG, TRACE -> DEBUG_COLOR;
             default -> INFO_COLOR;
         };
     }
 
-    private List<LogEntry> getFilteredEntries() {
-        return LogBuffer.getInstance().getFiltered(entry ->
-            entry.matchesFilter(
-                filterText,
-                showInfo,
-                showWarn,
-                showError,
-                showDebug
-            )
+    private static String exportStatus() {
+        List<LogExporter.Job> jobs = LogExporter.getInstance().pendingJobs();
+        if (jobs.isEmpty()) return "";
+        return String.format(
+            "Exporting %d%%%s  ",
+            (int) (jobs.get(0).progress() * 100),
+            jobs.size() > 1 ? " (+" + (jobs.size() - 1) + " queued)" : ""
+        );
+    }
+
+    private static String fileStatus(LogFile file) {
+        return switch (file.phase()) {
+            case DECOMPRESSING -> String.format(
+                "Decompressing %d%%  ",
+                (int) (file.progress() * 100)
+            );
+            case INDEXING -> String.format(
+                "Indexing %d%%  ",
+                (int) (file.progress() * 100)
+            );
+            case FAILED -> "Failed: " + file.error() + "  ";
+            case READY -> "";
+        };
+    }
+
+    private static FilteredView liveView() {
+        return new FilteredView(
+            LogBuffer.getInstance(),
+            TrigramIndex.getInstance(),
+            SpillStore.getInstance(),
+            true
+        );
+    }
+
+    private Component sourceLabel() {
+        return Component.literal(
+            "Source: " +
+            (openFile != null ? openFile.path().getFileName() : "Live")
+        );
+    }
+
+    // Live capture, then the files in logs/ from newest to oldest.
+    private void cycleSource() {
+        List<Path> sources = new ArrayList<>();
+        sources.add(null);
+        try (Stream<Path> files = Files.list(logsDir())) {
+            files
+                .filter(path -> {
+                    String name = path.getFileName().toString();
+                    return (
+                        (name.endsWith(".log") || name.endsWith(".log.gz")) &&
+                        Files.isRegularFile(path)
+                    );
+                })
+                .sorted(
+                    Comparator.comparing(LogViewerScreen::lastModified)
+                        .reversed()
+                )
+                .forEach(sources::add);
+        } catch (IOException e) {
+            LogViewerMod.LOGGER.warn(
+                "Failed to list log files: {}",
+                e.getMessage()
+            );
+        }
+
+        Path current = openFile != null ? openFile.path() : null;
+        int next = (sources.indexOf(current) + 1) % sources.size();
+        openSource(sources.get(next));
+    }
+
+    // The game directory, like the spill directory; the working directory
+    // is not always the same place.
+    private static Path logsDir() {
+        return FabricLoader.getInstance().getGameDir().resolve("logs");
+    }
+
+    private void openSource(Path path) {
+        if (openFile != null) {
+            openFile.close();
+        }
+        openFile = path != null ? LogFile.open(path) : null;
+        filteredView = openFile != null
+            ? new FilteredView(openFile, null, null, true)
+            : liveView();
+        lineCache.clear();
+        collapseStacks();
+        anchorSequence = 0;
+        pendingScroll = 0;
+        clearButton.active = openFile == null;
+        groupButton.active =
+            openFile == null && TemplateMiner.getInstance() != null;
+        if (openFile != null) {
+            setGrouped(false);
+        }
+        sourceButton.setMessage(sourceLabel());
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private void clearLogs() {
+        if (openFile != null) return;
+        LogBuffer.getInstance().clear();
+        SpillStore spill = SpillStore.getInstance();
+        if (spill != null) {
+            spill.clear();
+        }
+        TemplateMiner miner = TemplateMiner.getInstance();
+        if (miner != null) {
+            miner.clear();
+        }
+        groupsRefreshedAt = 0;
+        collapseStacks();
+    }
+
+    private FilteredView getFilteredEntries() {
+        filteredView.setFilter(
+            filterText,
+            showInfo,
+            showWarn,
+            showError,
+            showDebug
         );
+        filteredView.refresh();
+        return filteredView;
     }
 
     @Override
@@ -380,17 +851,15 @@ public class LogViewerScreen extends Screen {
         double horizontalAmount,
         double verticalAmount
     ) {
+        if (grouped && isMouseOverLogArea(mouseX, mouseY)) {
+            groupScroll = Math.max(0, groupScroll - verticalAmount * 3);
+            return true;
+        }
         if (isMouseOverLogArea(mouseX, mouseY)) {
             autoScroll = false;
             autoScrollButton.setMessage(Component.literal("Auto: OFF"));
-            scrollOffset = Math.max(0, scrollOffset - verticalAmount * 3);
-            List<LogEntry> entries = getFilteredEntries();
-            int logAreaHeight = windowHeight - HEADER_HEIGHT - FOOTER_HEIGHT;
-            int maxVisibleLines = logAreaHeight / LINE_HEIGHT;
-            scrollOffset = Math.min(
-                scrollOffset,
-                Math.max(0, entries.size() - maxVisibleLines)
-            );
+            // Applied to the anchor on the next frame.
+            pendingScroll -= verticalAmount * 3;
             return true;
         }
         return super.mouseScrolled(
@@ -416,6 +885,24 @@ public class LogViewerScreen extends Screen {
         double mouseY = event.y();
         int button = event.button();
 
+        if (button == 0 && grouped && isMouseOverLogArea(mouseX, mouseY)) {
+            int row =
+                (int) ((mouseY - windowY - HEADER_HEIGHT - 2) / LINE_HEIGHT) +
+                (int) groupScroll;
+            if (row >= 0 && row < groups.size()) {
+                searchBox.setValue("template:" + groups.get(row).id());
+                setGrouped(false);
+                return true;
+            }
+        }
+
+        if (button == 0 && !grouped && isMouseOverLogArea(mouseX, mouseY)) {
+            int line = (int) Math.floor((mouseY - drawnFirstY) / LINE_HEIGHT);
+            if (line >= 0 && line < drawnLines) {
+                toggleStack(lineOwners[line]);
+            }
+        }
+
         if (button == 0) {
             int resizeSize = 15;
             if (
@@ -428,11 +915,13 @@ public class LogViewerScreen extends Screen {
                 return true;
             }
 
+            // The header also holds buttons; only empty space drags.
             if (
                 mouseX >= windowX &&
                 mouseX <= windowX + windowWidth &&
                 mouseY >= windowY &&
-                mouseY <= windowY + HEADER_HEIGHT
+                mouseY <= windowY + HEADER_HEIGHT &&
+                getChildAt(mouseX, mouseY).isEmpty()
             ) {
                 isDragging = true;
                 dragOffsetX = (int) (mouseX - windowX);
@@ -497,6 +986,8 @@ public class LogViewerScreen extends Screen {
         warnButton.setY(buttonY);
         infoButton.setX(rightEdge - buttonWidth * 4 - buttonSpacing * 3);
         infoButton.setY(buttonY);
+        sourceButton.setX(windowX + PADDING + 75);
+        sourceButton.setY(buttonY);
 
         int footerY = windowY + windowHeight - FOOTER_HEIGHT + 5;
         searchBox.setX(windowX + PADDING);
@@ -507,6 +998,8 @@ public class LogViewerScreen extends Screen {
         exportButton.setY(footerY);
         autoScrollButton.setX(windowX + PADDING + 325);
         autoScrollButton.setY(footerY);
+        groupButton.setX(windowX + PADDING + 400);
+        groupButton.setY(footerY);
     }
 
     @Override
@@ -522,7 +1015,7 @@ public class LogViewerScreen extends Screen {
         boolean ctrl = (modifiers & GLFW.GLFW_MOD_CONTROL) != 0;
 
         if (ctrl && keyCode == GLFW.GLFW_KEY_L) {
-            LogBuffer.getInstance().clear();
+            clearLogs();
             return true;
         }
 
@@ -543,24 +1036,54 @@ public class LogViewerScreen extends Screen {
     }
 
     private void exportLogs() {
-        String filename =
-            "logs/log-viewer-export-" +
+        boolean gzip = LogViewerMod.getConfig().exportGzip();
+        Path target = logsDir().resolve(
+            "log-viewer-export-" +
             LocalDateTime.now().format(
                 DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss")
             ) +
-            ".txt";
+            (gzip ? ".txt.gz" : ".txt")
+        );
 
-        try (PrintWriter writer = new PrintWriter(new FileWriter(filename))) {
-            List<LogEntry> entries = getFilteredEntries();
-            for (LogEntry entry : entries) {
-                writer.println(entry.getFormattedMessage());
-            }
-        } catch (IOException e) {
-            dev.logviewer.LogViewerMod.LOGGER.error(
+        getFilteredEntries().export(
+            target,
+            gzip,
+            LogViewerScreen::onExportFinished
+        );
+    }
+
+    private static void onExportFinished(LogExporter.Job job) {
+        if (job.state() == LogExporter.State.FAILED) {
+            LogViewerMod.LOGGER.error(
                 "Failed to export logs: {}",
-                e.getMessage()
+                job.error()
             );
         }
+        Minecraft minecraft = Minecraft.getInstance();
+        minecraft.execute(() -> {
+            boolean done = job.state() == LogExporter.State.DONE;
+            SystemToast.addOrUpdate(
+                minecraft.getToastManager(),
+                EXPORT_TOAST,
+                Component.translatable(
+                    done ? "logviewer.export.done" : "logviewer.export.failed"
+                ),
+                Component.literal(
+                    done
+                        ? job.total() + " lines to " + job.target().getFileName()
+                        : job.error()
+                )
+            );
+        });
+    }
+
+    @Override
+    public void removed() {
+        if (openFile != null) {
+            openFile.close();
+            openFile = null;
+        }
+        super.removed();
     }
 
     @Override
@@ -33,5 +33,16 @@ public class KeyBindings {
             )
         );
 
+    // Unbound by default; the stats line is for diagnosing the viewer itself.
+    public static final KeyMapping TOGGLE_STATS =
+        KeyBindingHelper.registerKeyBinding(
+            new KeyMapping(
+                "key.logviewer.stats",
+                InputConstants.Type.KEYSYM,
+                GLFW.GLFW_KEY_UNKNOWN,
+                CATEGORY
+            )
+        );
+
     public static void register() {}
 }
@@ -0,0 +1,106 @@
+package dev.logviewer.harness;
+
+import dev.logviewer.log.LogBuffer;
+import dev.logviewer.log.LogEntry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/*
+ * Measures ingest lag end to end: logs a numbered probe line through the
+ * same log4j path as the load, then watches the buffer until that line is
+ * in it. Only one probe is in flight at a time. New slots are checked by
+ * logger id, so watching costs one column read per line; the message is
+ * only read for lines from the probe logger, whose id is learned from a
+ * first probe sent before any load. The watcher polls every POLL_NANOS
+ * rather than spinning, which is about the resolution of the result. A
+ * probe that has not shown up after TIMEOUT was dropped or evicted unseen
+ * and is counted as lost. The tail moves before a slot is published, so
+ * the scan stops at the first unreadable slot rather than skipping it.
+ */
+final class IngestProbe implements Runnable {
+    static final String LOGGER_NAME = "harness.IngestProbe";
+
+    private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final String PREFIX = "probe ";
+
+    private final Logger logger = LogManager.getLogger(LOGGER_NAME);
+    private final LatencyHistogram lag = new LatencyHistogram();
+    private final Thread thread = new Thread(this, "Harness-Probe");
+    private volatile boolean running = true;
+    private int loggerId = -1;
+    private long scanFrom = 0;
+    private long lost = 0;
+
+    /**
+     * Sends the first probe and waits for it, then starts probing in the
+     * background. Call before the load starts.
+     */
+    void start() {
+        logger.info(PREFIX + "start");
+        if (!await(PREFIX + "start", System.nanoTime())) {
+            throw new IllegalStateException("Probe line never reached the buffer; is capture installed?");
+        }
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void stop() throws InterruptedException {
+        running = false;
+        thread.join();
+    }
+
+    LatencyHistogram lag() {
+        return lag;
+    }
+
+    long lost() {
+        return lost;
+    }
+
+    @Override
+    public void run() {
+        long number = 0;
+        while (running) {
+            long sent = System.nanoTime();
+            String message = PREFIX + number;
+            logger.info(message);
+            if (await(message, sent)) {
+                lag.record(System.nanoTime() - sent);
+            } else {
+                lost++;
+            }
+            number++;
+            LockSupport.parkNanos(INTERVAL_NANOS);
+        }
+    }
+
+    private boolean await(String expected, long sent) {
+        LogBuffer buffer = LogBuffer.getInstance();
+        while (System.nanoTime() - sent < TIMEOUT_NANOS) {
+            scanFrom = Math.max(scanFrom, buffer.firstSequence());
+            long end = buffer.nextSequence();
+            for (; scanFrom < end; scanFrom++) {
+                int id = buffer.loggerIdAt(scanFrom);
+                // Claimed but not yet published; look again after the poll.
+                if (id < 0) break;
+                if (loggerId >= 0 && id != loggerId) continue;
+                LogEntry entry = buffer.get(scanFrom);
+                if (entry == null) continue;
+                if (loggerId < 0) {
+                    if (!entry.loggerName().equals(LOGGER_NAME)) continue;
+                    loggerId = entry.loggerId();
+                }
+                if (entry.message().equals(expected)) {
+                    scanFrom++;
+                    return true;
+                }
+            }
+            LockSupport.parkNanos(POLL_NANOS);
+        }
+        return false;
+    }
+}
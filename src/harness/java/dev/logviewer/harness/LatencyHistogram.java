@@ -0,0 +1,96 @@
+package dev.logviewer.harness;
+
+import java.util.Locale;
+
+/*
+ * Log-linear latency histogram: each power of two of nanoseconds is split
+ * into SUB_BUCKETS linear steps, so a percentile is within about 12% of
+ * the true value at a fixed 4 KB per recorder. Not thread-safe; every
+ * producer records into its own and they are merged for the report.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long total = 0;
+    private long max = 0;
+
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts[indexOf(value)]++;
+        total++;
+        max = Math.max(max, value);
+    }
+
+    void merge(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+        max = Math.max(max, other.max);
+    }
+
+    long count() {
+        return total;
+    }
+
+    long max() {
+        return max;
+    }
+
+    /**
+     * Upper bound of the bucket holding quantile {@code q}, capped at the
+     * largest value recorded.
+     */
+    long percentile(double q) {
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    String summary() {
+        return String.format(
+            Locale.ROOT,
+            "p50 %s  p90 %s  p99 %s  p99.9 %s  max %s  (n=%d)",
+            format(percentile(0.5)),
+            format(percentile(0.9)),
+            format(percentile(0.99)),
+            format(percentile(0.999)),
+            format(max),
+            total
+        );
+    }
+
+    static String format(long nanos) {
+        if (nanos < 1_000) return nanos + "ns";
+        if (nanos < 1_000_000) return String.format(Locale.ROOT, "%.1fus", nanos / 1e3);
+        if (nanos < 1_000_000_000) return String.format(Locale.ROOT, "%.1fms", nanos / 1e6);
+        return String.format(Locale.ROOT, "%.2fs", nanos / 1e9);
+    }
+
+    // Values below SUB_BUCKETS get a bucket each; above, the exponent picks
+    // the group and the next SUB_BITS bits the step within it.
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int step = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return Math.min(BUCKETS - 1, (exponent - SUB_BITS + 1) * SUB_BUCKETS + step);
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+        int step = index % SUB_BUCKETS;
+        long base = 1L << exponent;
+        return base + ((long) (step + 1) << (exponent - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,461 @@
+package dev.logviewer.harness;
+
+import dev.logviewer.LogViewerConfig;
+import dev.logviewer.log.AsyncIngest;
+import dev.logviewer.log.LogBuffer;
+import dev.logviewer.log.LogCapture;
+import dev.logviewer.log.LogEntry;
+import dev.logviewer.log.LogFile;
+import dev.logviewer.log.Metrics;
+import dev.logviewer.log.RateLimiter;
+import dev.logviewer.log.SpillStore;
+import dev.logviewer.log.TemplateMiner;
+import dev.logviewer.log.TrigramIndex;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.apache.logging.log4j.core.config.builder.api.ConfigurationBuilder;
+import org.apache.logging.log4j.core.config.builder.api.ConfigurationBuilderFactory;
+import org.apache.logging.log4j.core.config.builder.impl.BuiltConfiguration;
+
+/*
+ * Drives the capture path from a plain JVM: a real log4j2 context with no
+ * appenders of its own, LogCapture installed on its root logger, and the
+ * buffer, template miner, index and spill store set up the way the mod sets
+ * them up. Producer threads then log a synthetic profile or replay a log
+ * file, and the run ends with a report of producer call latency, ingest lag
+ * (see IngestProbe), drops and heap growth.
+ *
+ * Producers follow a schedule of intended send times. A producer that falls
+ * more than a second behind skips ahead instead of bursting to catch up, so
+ * "sent" can fall short of the target rate once the capture path saturates.
+ */
+public final class LoadHarness {
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_DEBT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long SPIN_THRESHOLD_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final int ERROR_EVERY = 500;
+    private static final int WARN_EVERY = 20;
+
+    // Each takes exactly four parameters.
+    private static final String[] TEMPLATES = {
+        "Loaded chunk [{}, {}] in {} ms ({} entities)",
+        "Player{} moved too quickly! {},{},{}",
+        "Can't keep up! Tick {} took {}ms, {} ticks behind, {} tasks queued",
+        "Saving chunk [{}, {}] for dimension {} ({} pending)",
+        "Entity {} died at [{}, {}, {}]",
+    };
+
+    private final Options options;
+    private final LongAdder sent = new LongAdder();
+    private final List<LatencyHistogram> latencies = new ArrayList<>();
+    private volatile boolean running = true;
+    private SpillStore spill;
+    private Path spillDir;
+
+    private LoadHarness(Options options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(Options.USAGE);
+            System.exit(2);
+            return;
+        }
+        new LoadHarness(options).run();
+    }
+
+    private void run() throws Exception {
+        // Before anything touches LogManager, or the default context wins.
+        initializeLog4j();
+        LogViewerConfig config = options.config != null
+            ? LogViewerConfig.load(options.config)
+            : LogViewerConfig.defaults();
+        install(config);
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long heapBefore = settledHeap(memory);
+        long peakHeap = heapBefore;
+        int peakQueue = 0;
+
+        IngestProbe probe = new IngestProbe();
+        probe.start();
+
+        List<Thread> producers = startProducers();
+        System.out.println(describe());
+
+        long start = System.nanoTime();
+        long deadline = options.seconds > 0 ? start + TimeUnit.SECONDS.toNanos(options.seconds) : Long.MAX_VALUE;
+        long lastSent = 0;
+        long lastReport = start;
+        while (System.nanoTime() < deadline && anyAlive(producers)) {
+            LockSupport.parkNanos(REPORT_INTERVAL_NANOS / 10);
+            peakHeap = Math.max(peakHeap, memory.getHeapMemoryUsage().getUsed());
+            AsyncIngest ingest = LogCapture.getIngest();
+            if (ingest != null) {
+                peakQueue = Math.max(peakQueue, ingest.queuedCount());
+            }
+
+            // The lag histogram is read while the probe writes it; close
+            // enough for a progress line, the report reads it after stop().
+            long now = System.nanoTime();
+            if (now - lastReport >= REPORT_INTERVAL_NANOS) {
+                long total = sent.sum();
+                System.out.printf(
+                    Locale.ROOT,
+                    "%5.1fs  sent %8.0f/s  queued %7d  lag p99 %s%n",
+                    (now - start) / 1e9,
+                    (total - lastSent) * 1e9 / (now - lastReport),
+                    ingest != null ? ingest.queuedCount() : 0,
+                    LatencyHistogram.format(probe.lag().percentile(0.99))
+                );
+                lastSent = total;
+                lastReport = now;
+            }
+        }
+        running = false;
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        probe.stop();
+        LogCapture.uninstall();
+        removeSpill();
+        long heapAfter = settledHeap(memory);
+
+        report(elapsed, probe, heapBefore, heapAfter, peakHeap, peakQueue);
+    }
+
+    // Replaces the default configuration, which would print every line to
+    // the console, with a bare root logger that lets everything through.
+    private static void initializeLog4j() {
+        ConfigurationBuilder<BuiltConfiguration> builder = ConfigurationBuilderFactory.newConfigurationBuilder();
+        builder.setStatusLevel(Level.WARN);
+        builder.setConfigurationName("LoadHarness");
+        builder.add(builder.newRootLogger(Level.ALL));
+        Configurator.initialize(builder.build());
+    }
+
+    // Mirrors LogViewerMod.onInitialize, with spill files in a temp directory.
+    private void install(LogViewerConfig config) throws IOException {
+        Metrics.setEnabled(config.metricsEnabled());
+        LogBuffer.configure(config.bufferMaxEntries(), config.bufferMaxBytes(), config.bufferCollapseWindow());
+        if (config.searchIndex()) {
+            TrigramIndex.configure(LogBuffer.getInstance(), config.searchIndexMaxBytes());
+        }
+        // Mined on the ingest thread only; not worth a lock on logging threads.
+        if (config.templatesEnabled() && config.captureAsync()) {
+            TemplateMiner.configure();
+        }
+        if (config.spillEnabled()) {
+            spillDir = Files.createTempDirectory("log-viewer-harness");
+            spill = SpillStore.open(spillDir, config.spillMaxBytes());
+            LogBuffer.getInstance().setEvictionListener(spill::spill);
+        }
+        LogCapture.install(config);
+    }
+
+    private void removeSpill() throws IOException {
+        if (spill == null) return;
+        spill.close();
+        try (Stream<Path> files = Files.walk(spillDir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private List<Thread> startProducers() throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        if (options.replay != null) {
+            LogFile file = openReplay(options.replay);
+            LatencyHistogram latency = new LatencyHistogram();
+            latencies.add(latency);
+            threads.add(Thread.ofPlatform().name("Harness-Replay").start(() -> replay(file, latency)));
+            return threads;
+        }
+        for (int i = 0; i < options.threads; i++) {
+            LatencyHistogram latency = new LatencyHistogram();
+            latencies.add(latency);
+            int index = i;
+            threads.add(Thread.ofPlatform().name("Harness-Producer-" + i).start(() -> produce(index, latency)));
+        }
+        return threads;
+    }
+
+    private void produce(int index, LatencyHistogram latency) {
+        Profile profile = options.profile;
+        Logger[] loggers = new Logger[profile.singleLogger() ? 1 : options.loggers];
+        for (int i = 0; i < loggers.length; i++) {
+            loggers[i] = LogManager.getLogger(profile.singleLogger() ? "harness.Flood" : "harness.mod" + i + ".Worker");
+        }
+        double threadRate = options.rate / options.threads;
+
+        long start = System.nanoTime();
+        long next = start;
+        long n = index;
+        while (running) {
+            long now = System.nanoTime();
+            double factor = profile.rateFactor(now - start);
+            if (factor == 0) {
+                LockSupport.parkNanos(Math.min(profile.untilActive(now - start), MAX_PARK_NANOS));
+                next = System.nanoTime();
+                continue;
+            }
+            if (threadRate > 0) {
+                next += (long) (1e9 / (threadRate * factor));
+                if (now - next > MAX_DEBT_NANOS) {
+                    next = now;
+                }
+                waitUntil(next);
+                if (!running) break;
+            }
+
+            Logger logger = loggers[(int) (n % loggers.length)];
+            String template = TEMPLATES[(int) (n % TEMPLATES.length)];
+            long begin = System.nanoTime();
+            if (n % ERROR_EVERY == 0) {
+                logger.error(template, n, n & 1023, n % 97, n % 13, new IllegalStateException("synthetic " + (n % 4)));
+            } else {
+                logger.log(n % WARN_EVERY == 0 ? Level.WARN : Level.INFO, template, n, n & 1023, n % 97, n % 13);
+            }
+            latency.record(System.nanoTime() - begin);
+            sent.increment();
+            n += options.threads;
+        }
+    }
+
+    private void replay(LogFile file, LatencyHistogram latency) {
+        Map<String, Logger> loggers = new HashMap<>();
+        long first = file.firstSequence();
+        long end = file.nextSequence();
+        long start = System.nanoTime();
+        long next = start;
+        long firstTimestamp = -1;
+        for (long seq = first; seq < end && running; seq++) {
+            LogEntry entry = file.get(seq);
+            if (entry == null) continue;
+
+            if (options.rate > 0) {
+                next += (long) (1e9 / options.rate);
+            } else if (options.speed > 0) {
+                if (firstTimestamp < 0) {
+                    firstTimestamp = entry.timestamp();
+                }
+                long offset = TimeUnit.MILLISECONDS.toNanos(entry.timestamp() - firstTimestamp);
+                next = start + (long) (offset / options.speed);
+            }
+            long now = System.nanoTime();
+            if (now - next > MAX_DEBT_NANOS) {
+                next = now;
+            }
+            waitUntil(next);
+            if (!running) break;
+
+            Logger logger = loggers.computeIfAbsent(entry.loggerName(), LogManager::getLogger);
+            long begin = System.nanoTime();
+            logger.log(entry.level(), entry.message());
+            latency.record(System.nanoTime() - begin);
+            sent.increment();
+        }
+        file.close();
+    }
+
+    private static LogFile openReplay(Path path) throws InterruptedException {
+        LogFile file = LogFile.open(path);
+        while (file.phase() != LogFile.Phase.READY) {
+            if (file.phase() == LogFile.Phase.FAILED) {
+                throw new IllegalStateException("Cannot read " + path + ": " + file.error());
+            }
+            Thread.sleep(50);
+        }
+        return file;
+    }
+
+    // Parks for long waits and spins the last stretch, since a park can
+    // overshoot by tens of microseconds. Parks are capped so a producer
+    // waiting on a sparse replay still notices the end of the run.
+    private void waitUntil(long deadline) {
+        long remaining;
+        while (running && (remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > SPIN_THRESHOLD_NANOS) {
+                LockSupport.parkNanos(Math.min(remaining - SPIN_THRESHOLD_NANOS, MAX_PARK_NANOS));
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    private static boolean anyAlive(List<Thread> threads) {
+        for (Thread thread : threads) {
+            if (thread.isAlive()) return true;
+        }
+        return false;
+    }
+
+    private static long settledHeap(MemoryMXBean memory) {
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private String describe() {
+        if (options.replay != null) {
+            return String.format(
+                Locale.ROOT,
+                "replaying %s at %s",
+                options.replay,
+                options.rate > 0 ? options.rate + " lines/s" : options.speed > 0 ? options.speed + "x" : "full speed"
+            );
+        }
+        return String.format(
+            Locale.ROOT,
+            "profile %s, %d threads, %s, %s",
+            options.profile.name().toLowerCase(Locale.ROOT),
+            options.threads,
+            options.rate > 0 ? String.format(Locale.ROOT, "%.0f lines/s", options.rate) : "unpaced",
+            options.seconds > 0 ? options.seconds + "s" : "until stopped"
+        );
+    }
+
+    private void report(
+        long elapsed,
+        IngestProbe probe,
+        long heapBefore,
+        long heapAfter,
+        long peakHeap,
+        int peakQueue
+    ) {
+        LatencyHistogram latency = new LatencyHistogram();
+        for (LatencyHistogram producer : latencies) {
+            latency.merge(producer);
+        }
+        AsyncIngest ingest = LogCapture.getIngest();
+        RateLimiter limiter = LogCapture.getRateLimiter();
+        LogBuffer buffer = LogBuffer.getInstance();
+
+        System.out.println();
+        long total = sent.sum();
+        System.out.printf(Locale.ROOT, "sent          %d lines in %.1fs (%.0f/s)%n", total, elapsed / 1e9, total * 1e9 / elapsed);
+        System.out.println("producer call " + latency.summary());
+        System.out.println("ingest lag    " + probe.lag().summary() + ", " + probe.lost() + " probes lost");
+        System.out.printf(
+            Locale.ROOT,
+            "dropped       queue %d, rate limit %d, filtered %d; peak queue %d%n",
+            ingest != null ? ingest.droppedCount() : 0,
+            limiter != null ? limiter.suppressedCount() : 0,
+            Metrics.FILTERED_OUT.sum(),
+            peakQueue
+        );
+        System.out.printf(
+            Locale.ROOT,
+            "buffer        %d lines, %.1f MB retained%n",
+            buffer.size(),
+            buffer.retainedBytes() / (1024.0 * 1024.0)
+        );
+        System.out.printf(
+            Locale.ROOT,
+            "heap          %.1f MB before, %.1f MB after (%+.1f MB), %.1f MB peak%n",
+            heapBefore / (1024.0 * 1024.0),
+            heapAfter / (1024.0 * 1024.0),
+            (heapAfter - heapBefore) / (1024.0 * 1024.0),
+            peakHeap / (1024.0 * 1024.0)
+        );
+        if (Metrics.isEnabled()) {
+            System.out.println();
+            System.out.print(Metrics.dumpStats());
+        }
+    }
+
+    private static final class Options {
+        static final String USAGE = """
+            usage: LoadHarness [options]
+              --profile steady|bursty|flood  synthetic load shape (default steady)
+              --replay <file>                replay a .log or .log.gz file instead
+              --rate <lines/s>               target rate over all producers; 0 is unpaced
+                                             (default 10000, flood 0)
+              --speed <factor>               replay pacing relative to the file's
+                                             timestamps when no rate is given; 0 is
+                                             unpaced (default 1)
+              --threads <n>                  producer threads (default 4)
+              --loggers <n>                  distinct loggers for steady and bursty
+                                             (default 32)
+              --seconds <n>                  run time; 0 runs until a replay ends
+                                             (default 30, replay 0)
+              --config <file>                log-viewer.properties to use instead of
+                                             the defaults""";
+
+        Profile profile = Profile.STEADY;
+        Path replay;
+        Path config;
+        double rate = -1;
+        double speed = 1;
+        int threads = 4;
+        int loggers = 32;
+        int seconds = -1;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String name = args[i];
+                if (name.equals("--help")) {
+                    System.out.println(USAGE);
+                    System.exit(0);
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + name);
+                }
+                String value = args[++i];
+                try {
+                    switch (name) {
+                        case "--profile" -> options.profile = Profile.parse(value);
+                        case "--replay" -> options.replay = Path.of(value);
+                        case "--config" -> options.config = Path.of(value);
+                        case "--rate" -> options.rate = Double.parseDouble(value);
+                        case "--speed" -> options.speed = Double.parseDouble(value);
+                        case "--threads" -> options.threads = Math.max(1, Integer.parseInt(value));
+                        case "--loggers" -> options.loggers = Math.max(1, Integer.parseInt(value));
+                        case "--seconds" -> options.seconds = Math.max(0, Integer.parseInt(value));
+                        default -> throw new IllegalArgumentException("Unknown option " + name);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Bad value for " + name + ": " + value);
+                }
+            }
+            if (options.rate < 0) {
+                options.rate = options.profile == Profile.FLOOD || options.replay != null ? 0 : 10_000;
+            }
+            if (options.seconds < 0) {
+                options.seconds = options.replay != null ? 0 : 30;
+            }
+            if (options.replay == null && options.seconds == 0) {
+                throw new IllegalArgumentException("Synthetic profiles need --seconds");
+            }
+            if (options.config != null && Files.notExists(options.config)) {
+                throw new IllegalArgumentException("No such config file: " + options.config);
+            }
+            return options;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package dev.logviewer.harness;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Synthetic load shapes. Each one says how fast producers should be logging
+ * at a point in the run, as a multiple of the requested rate, and which
+ * loggers the lines come from.
+ */
+enum Profile {
+    /** The requested rate, spread over all loggers. */
+    STEADY,
+    /**
+     * Ten times the requested rate for the first tenth of every two
+     * seconds and nothing in between, so the average is the requested rate.
+     */
+    BURSTY,
+    /** Everything from one logger, as fast as possible unless a rate is given. */
+    FLOOD;
+
+    private static final long BURST_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final long BURST_NANOS = BURST_PERIOD_NANOS / 10;
+
+    double rateFactor(long elapsedNanos) {
+        if (this != BURSTY) return 1;
+        return elapsedNanos % BURST_PERIOD_NANOS < BURST_NANOS ? 10 : 0;
+    }
+
+    /**
+     * Nanoseconds from {@code elapsedNanos} until the rate is no longer 0.
+     */
+    long untilActive(long elapsedNanos) {
+        if (rateFactor(elapsedNanos) > 0) return 0;
+        return BURST_PERIOD_NANOS - elapsedNanos % BURST_PERIOD_NANOS;
+    }
+
+    boolean singleLogger() {
+        return this == FLOOD;
+    }
+
+    static Profile parse(String name) {
+        return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,141 @@
+package dev.logviewer.benchmark;
+
+import dev.logviewer.log.LogBuffer;
+import dev.logviewer.log.LogEntry;
+import dev.logviewer.log.LogLevel;
+import dev.logviewer.log.TemplateMiner;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.logging.log4j.Level;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * LogBuffer.add from 1, 4 and 16 producers while one reader keeps calling
+ * getFiltered(), the way the HUD and an export read the buffer during a log
+ * storm. Each group shares one buffer; producers cycle through prebuilt
+ * entries whose messages are distinct within a producer and carry the
+ * producer's own number, so repeat collapsing never kicks in even when
+ * producers run in lockstep. With templates on, each add is preceded by
+ * TemplateMiner.assign, as on the ingest thread; with several producers
+ * that also shows what the miner's lock would cost if logging threads
+ * shared it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Group)
+public class LogBufferBenchmark {
+    private static final int ENTRIES = 1024;
+    private static final AtomicInteger PRODUCERS = new AtomicInteger();
+
+    @Param({"10000"})
+    public int capacity;
+
+    @Param({"false", "true"})
+    public boolean templates;
+
+    private LogBuffer buffer;
+    private TemplateMiner miner;
+
+    @Setup
+    public void setUp() {
+        buffer = new LogBuffer(capacity, Long.MAX_VALUE, LogBuffer.DEFAULT_COLLAPSE_WINDOW);
+        if (templates) {
+            TemplateMiner.configure();
+            miner = TemplateMiner.getInstance();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+        final LogEntry[] entries = new LogEntry[ENTRIES];
+        int next = 0;
+
+        @Setup
+        public void setUp() {
+            long now = System.currentTimeMillis();
+            String thread = Thread.currentThread().getName();
+            int producer = PRODUCERS.getAndIncrement();
+            for (int i = 0; i < ENTRIES; i++) {
+                entries[i] = new LogEntry(
+                    now + i,
+                    i % 16 == 0 ? Level.WARN : Level.INFO,
+                    "net.minecraft.server.level.ChunkMap",
+                    "Loaded chunk [" + i + ", " + producer + "] in " + (i % 50) + " ms",
+                    thread
+                );
+            }
+        }
+
+        LogEntry next() {
+            LogEntry entry = entries[next];
+            next = (next + 1) & (ENTRIES - 1);
+            return entry;
+        }
+    }
+
+    @Benchmark
+    @Group("producers1")
+    @GroupThreads(1)
+    public void add1(Producer producer) {
+        add(producer.next());
+    }
+
+    @Benchmark
+    @Group("producers1")
+    @GroupThreads(1)
+    public List<LogEntry> read1() {
+        return readWarnings();
+    }
+
+    @Benchmark
+    @Group("producers4")
+    @GroupThreads(4)
+    public void add4(Producer producer) {
+        add(producer.next());
+    }
+
+    @Benchmark
+    @Group("producers4")
+    @GroupThreads(1)
+    public List<LogEntry> read4() {
+        return readWarnings();
+    }
+
+    @Benchmark
+    @Group("producers16")
+    @GroupThreads(16)
+    public void add16(Producer producer) {
+        add(producer.next());
+    }
+
+    @Benchmark
+    @Group("producers16")
+    @GroupThreads(1)
+    public List<LogEntry> read16() {
+        return readWarnings();
+    }
+
+    private void add(LogEntry entry) {
+        buffer.add(entry, miner != null ? miner.assign(entry) : entry.templateId());
+    }
+
+    private List<LogEntry> readWarnings() {
+        return buffer.getFiltered(entry -> entry.logLevel() != LogLevel.INFO);
+    }
+}
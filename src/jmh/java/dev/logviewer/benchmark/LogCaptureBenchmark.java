@@ -0,0 +1,96 @@
+package dev.logviewer.benchmark;
+
+import dev.logviewer.LogViewerConfig;
+import dev.logviewer.log.LogCapture;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.Logger;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * The appender call a logging thread pays for every line, fed prebuilt
+ * log4j events so only LogCapture's own work is measured. Rate limits are
+ * off so every event is captured; async mode hands lines to the ingest
+ * thread, sync mode appends to the buffer on the calling thread.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class LogCaptureBenchmark {
+    private static final int EVENTS = 256;
+
+    @Param({"true", "false"})
+    public boolean async;
+
+    @Param({"true", "false"})
+    public boolean lazyFormatting;
+
+    private Appender appender;
+    private LogEvent[] events;
+
+    @Setup
+    public void setUp() throws IOException {
+        Path config = Files.createTempFile("log-viewer-bench", ".properties");
+        Files.writeString(
+            config,
+            "capture.async=" + async + "\n"
+                + "capture.lazyFormatting=" + lazyFormatting + "\n"
+                + "capture.loggerRateLimit=0\n"
+        );
+        LogCapture.install(LogViewerConfig.load(config));
+        Files.delete(config);
+        appender = ((Logger) LogManager.getRootLogger()).getAppenders().get("LogViewerCapture");
+
+        events = new LogEvent[EVENTS];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < EVENTS; i++) {
+            events[i] = Log4jLogEvent.newBuilder()
+                .setLoggerName("net.minecraft.server.level.ChunkMap")
+                .setLevel(i % 16 == 0 ? Level.WARN : Level.INFO)
+                .setMessage(new ParameterizedMessage("Loaded chunk [{}, {}] in {} ms", i, i * 7, i % 50))
+                .setThreadName("Server thread")
+                .setTimeMillis(now + i)
+                .build();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        LogCapture.uninstall();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next = 0;
+    }
+
+    @Benchmark
+    public void append(Cursor cursor) {
+        appender.append(events[cursor.next]);
+        cursor.next = (cursor.next + 1) & (EVENTS - 1);
+    }
+}
@@ -0,0 +1,66 @@
+package dev.logviewer.benchmark;
+
+import dev.logviewer.log.LogEntry;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.Level;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Per-line costs paid on every frame and every search: the filter check,
+ * with an empty search box and with a term, and building the displayed
+ * text.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LogEntryBenchmark {
+    // "" is the empty search box; "keep up" matches, "chunk" does not.
+    @Param({"", "keep up", "chunk"})
+    public String term;
+
+    private LogEntry entry;
+
+    @Setup
+    public void setUp() {
+        entry = new LogEntry(
+            System.currentTimeMillis(),
+            Level.WARN,
+            "net.minecraft.server.MinecraftServer",
+            "Can't keep up! Is the server overloaded? Running 2043ms or 40 ticks behind",
+            "Server thread"
+        );
+    }
+
+    @Benchmark
+    public boolean matchesFilter() {
+        return entry.matchesFilter(term, true, true, true, true);
+    }
+
+    @Benchmark
+    public String formattedMessage() {
+        return entry.getFormattedMessage();
+    }
+
+    @Benchmark
+    public String formattedMessageWithMillis() {
+        return entry.getFormattedMessage(true);
+    }
+
+    @Benchmark
+    public String formattedTime() {
+        return entry.getFormattedTime();
+    }
+}
@@ -0,0 +1,247 @@
+package dev.logviewer;
+
+import dev.logviewer.log.AsyncIngest;
+import dev.logviewer.log.LogBuffer;
+import dev.logviewer.log.SpillStore;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import org.apache.logging.log4j.Level;
+
+public class LogViewerConfig {
+    public static final String FILE_NAME = "log-viewer.properties";
+
+    private static final String DEFAULT_CONTENT = """
+        # Log Viewer configuration
+
+        # Maximum number of log lines kept in memory.
+        buffer.maxEntries=%d
+        # Approximate heap budget for retained log lines, in megabytes. The oldest
+        # lines are evicted once either limit is reached.
+        buffer.maxMegabytes=%d
+        # Count a line as a repeat of an identical one (same level, logger and
+        # message) among this many preceding lines instead of storing it again.
+        # 0 turns this off.
+        buffer.collapseWindow=%d
+
+        # Hand captured lines to a background thread instead of appending them to
+        # the buffer on the thread that logged them.
+        capture.async=true
+        # Number of lines that can wait for the background thread.
+        capture.queueSize=65536
+        # What to do when that queue is full: DROP_OLDEST, DROP_NEWEST or BLOCK.
+        capture.overflowPolicy=DROP_OLDEST
+        # Maximum number of lines moved into the buffer per batch.
+        capture.batchSize=512
+        # Keep "{}" message patterns and their parameters, and only build the final
+        # text when a line is shown, searched or exported.
+        capture.lazyFormatting=true
+        # Lines per second captured from any one logger; 0 for no limit. Lines over
+        # the limit are dropped and reported in a "Suppressed N lines" line every
+        # few seconds.
+        capture.loggerRateLimit=0
+        # Lines per second captured across all loggers; 0 for no limit.
+        capture.globalRateLimit=0
+        # Keep one in every N lines over a limit instead of dropping them all;
+        # 0 drops them all.
+        capture.sampleOverLimit=0
+
+        # Capture filters by logger name prefix: the minimum level captured from
+        # those loggers, or OFF. The longest matching prefix applies and filter.*
+        # covers every other logger. Filtered lines are dropped before anything
+        # is stored.
+        #filter.net.minecraft.client.sounds=OFF
+        #filter.com.noisy.mod=WARN
+
+        # Show milliseconds in viewer timestamps.
+        display.showMillis=false
+
+        # Keep a trigram index of message text so searches of three or more
+        # characters do not scan every line. Indexing formats every captured line.
+        search.index=false
+        # Heap budget for the index, in megabytes. The index drops its oldest lines
+        # when over budget and searches scan those instead.
+        search.indexMaxMegabytes=32
+
+        # Group messages into templates ("Running <*>ms behind") as they are
+        # captured, for the grouped view and template: searches. Needs
+        # capture.async=true; templates are mined on the ingest thread.
+        templates.enabled=true
+
+        # Write lines that fall out of memory to logs/log-viewer/ so the viewer can
+        # scroll back past them. The files are replaced every session.
+        spill.enabled=true
+        # Disk budget for those files, in megabytes; the oldest are deleted first.
+        spill.maxMegabytes=%d
+
+        # Compress exported logs with gzip.
+        export.gzip=false
+
+        # Time captures, buffer appends, filtering and rendering for the HUD stats
+        # line and Metrics.dumpStats().
+        metrics.enabled=true
+        """.formatted(
+            LogBuffer.DEFAULT_MAX_ENTRIES,
+            LogBuffer.DEFAULT_MAX_BYTES / (1024 * 1024),
+            LogBuffer.DEFAULT_COLLAPSE_WINDOW,
+            SpillStore.DEFAULT_MAX_BYTES / (1024 * 1024)
+        );
+
+    private final Properties properties;
+
+    private LogViewerConfig(Properties properties) {
+        this.properties = properties;
+    }
+
+    public static LogViewerConfig defaults() {
+        return new LogViewerConfig(new Properties());
+    }
+
+    public static LogViewerConfig load(Path file) {
+        Properties properties = new Properties();
+        try {
+            if (Files.notExists(file)) {
+                Files.createDirectories(file.getParent());
+                Files.writeString(file, DEFAULT_CONTENT, StandardCharsets.UTF_8);
+            }
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+        } catch (IOException e) {
+            LogViewerMod.LOGGER.warn("Failed to read {}, using defaults: {}", file, e.getMessage());
+        }
+        return new LogViewerConfig(properties);
+    }
+
+    public int bufferMaxEntries() {
+        return Math.max(1, getInt("buffer.maxEntries", LogBuffer.DEFAULT_MAX_ENTRIES));
+    }
+
+    public long bufferMaxBytes() {
+        return getLong("buffer.maxMegabytes", LogBuffer.DEFAULT_MAX_BYTES / (1024 * 1024)) * 1024 * 1024;
+    }
+
+    public int bufferCollapseWindow() {
+        return Math.max(0, getInt("buffer.collapseWindow", LogBuffer.DEFAULT_COLLAPSE_WINDOW));
+    }
+
+    public boolean captureAsync() {
+        return getBoolean("capture.async", true);
+    }
+
+    public int captureQueueSize() {
+        return Math.max(2, getInt("capture.queueSize", 65536));
+    }
+
+    public AsyncIngest.OverflowPolicy captureOverflowPolicy() {
+        return getEnum("capture.overflowPolicy", AsyncIngest.OverflowPolicy.DROP_OLDEST);
+    }
+
+    public int captureBatchSize() {
+        return Math.max(1, getInt("capture.batchSize", 512));
+    }
+
+    public boolean captureLazyFormatting() {
+        return getBoolean("capture.lazyFormatting", true);
+    }
+
+    public int captureLoggerRateLimit() {
+        return Math.max(0, getInt("capture.loggerRateLimit", 0));
+    }
+
+    public int captureGlobalRateLimit() {
+        return Math.max(0, getInt("capture.globalRateLimit", 0));
+    }
+
+    public int captureSampleOverLimit() {
+        return Math.max(0, getInt("capture.sampleOverLimit", 0));
+    }
+
+    /**
+     * The filter.* rules as logger prefix to minimum level.
+     */
+    public Map<String, Level> captureFilters() {
+        Map<String, Level> rules = new LinkedHashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.startsWith("filter.") || key.length() == "filter.".length()) continue;
+            String value = properties.getProperty(key).trim();
+            Level level = Level.getLevel(value.toUpperCase(Locale.ROOT));
+            if (level == null) {
+                LogViewerMod.LOGGER.warn("Invalid level for {}: '{}', ignoring the rule", key, value);
+                continue;
+            }
+            rules.put(key.substring("filter.".length()), level);
+        }
+        return rules;
+    }
+
+    public boolean displayShowMillis() {
+        return getBoolean("display.showMillis", false);
+    }
+
+    public boolean searchIndex() {
+        return getBoolean("search.index", false);
+    }
+
+    public long searchIndexMaxBytes() {
+        return getLong("search.indexMaxMegabytes", 32) * 1024 * 1024;
+    }
+
+    public boolean templatesEnabled() {
+        return getBoolean("templates.enabled", true);
+    }
+
+    public boolean spillEnabled() {
+        return getBoolean("spill.enabled", true);
+    }
+
+    public long spillMaxBytes() {
+        return getLong("spill.maxMegabytes", SpillStore.DEFAULT_MAX_BYTES / (1024 * 1024)) * 1024 * 1024;
+    }
+
+    public boolean exportGzip() {
+        return getBoolean("export.gzip", false);
+    }
+
+    public boolean metricsEnabled() {
+        return getBoolean("metrics.enabled", true);
+    }
+
+    private boolean getBoolean(String key, boolean defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.isBlank()) return defaultValue;
+        return Boolean.parseBoolean(value.trim());
+    }
+
+    private <E extends Enum<E>> E getEnum(String key, E defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.isBlank()) return defaultValue;
+        try {
+            return Enum.valueOf(defaultValue.getDeclaringClass(), value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            LogViewerMod.LOGGER.warn("Invalid value for {}: '{}', using {}", key, value, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private int getInt(String key, int defaultValue) {
+        return (int) Math.min(Integer.MAX_VALUE, getLong(key, defaultValue));
+    }
+
+    private long getLong(String key, long defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.isBlank()) return defaultValue;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            LogViewerMod.LOGGER.warn("Invalid value for {}: '{}', using {}", key, value, defaultValue);
+            return defaultValue;
+        }
+    }
+}
@@ -1,7 +1,15 @@
 package dev.logviewer;
 
+import dev.logviewer.log.LogBuffer;
 import dev.logviewer.log.LogCapture;
+import dev.logviewer.log.Metrics;
+import dev.logviewer.log.SpillStore;
+import dev.logviewer.log.TemplateMiner;
+import dev.logviewer.log.TrigramIndex;
+import java.io.IOException;
+import java.nio.file.Path;
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.loader.api.FabricLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -9,9 +17,40 @@ public class LogViewerMod implements ModInitializer {
     public static final String MOD_ID = "log-viewer";
     public static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
 
+    private static LogViewerConfig config = LogViewerConfig.defaults();
+
     @Override
     public void onInitialize() {
-        LogCapture.install();
+        config = LogViewerConfig.load(
+            FabricLoader.getInstance().getConfigDir().resolve(LogViewerConfig.FILE_NAME)
+        );
+        Metrics.setEnabled(config.metricsEnabled());
+        LogBuffer.configure(config.bufferMaxEntries(), config.bufferMaxBytes(), config.bufferCollapseWindow());
+        if (config.searchIndex()) {
+            TrigramIndex.configure(LogBuffer.getInstance(), config.searchIndexMaxBytes());
+        }
+        // Mined on the ingest thread only; not worth a lock on logging threads.
+        if (config.templatesEnabled() && config.captureAsync()) {
+            TemplateMiner.configure();
+        }
+        if (config.spillEnabled()) {
+            Path spillDir = FabricLoader.getInstance().getGameDir().resolve("logs").resolve("log-viewer");
+            try {
+                SpillStore spill = SpillStore.open(spillDir, config.spillMaxBytes());
+                LogBuffer.getInstance().setEvictionListener(spill::spill);
+                Runtime.getRuntime().addShutdownHook(new Thread(spill::close, "LogViewer-Spill-Close"));
+            } catch (IOException e) {
+                LOGGER.warn("Could not open {}, history is limited to memory: {}", spillDir, e.getMessage());
+            }
+        }
+
+        LogCapture.install(config);
         LOGGER.info("Log Viewer initialized - press F7 to toggle the log viewer");
+        LOGGER.info("Log buffer holds up to {} lines / {} MB",
+            config.bufferMaxEntries(), config.bufferMaxBytes() / (1024 * 1024));
+    }
+
+    public static LogViewerConfig getConfig() {
+        return config;
     }
 }
@@ -0,0 +1,177 @@
+package dev.logviewer.log;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Moves LogBuffer appends off the logging threads. Producers only publish an
+ * already-built LogEntry into a bounded queue; a single daemon thread drains
+ * it in batches into the buffer. That thread is also the only caller of the
+ * template miner, so its lock never holds up a logging thread.
+ */
+public class AsyncIngest {
+    public enum OverflowPolicy {
+        DROP_OLDEST,
+        DROP_NEWEST,
+        BLOCK
+    }
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final IngestQueue<LogEntry> queue;
+    private final OverflowPolicy policy;
+    private final int batchSize;
+    private final Thread consumer;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    private long reportedDrops = 0;
+
+    private volatile boolean running = true;
+    private volatile boolean idle = false;
+    private volatile Runnable idleTask;
+
+    public AsyncIngest(int queueSize, OverflowPolicy policy, int batchSize) {
+        this.queue = new IngestQueue<>(queueSize);
+        this.policy = policy;
+        this.batchSize = Math.max(1, batchSize);
+        this.consumer = new Thread(this::drainLoop, "LogViewer-Ingest");
+        this.consumer.setDaemon(true);
+    }
+
+    public void start() {
+        consumer.start();
+    }
+
+    /**
+     * Runs {@code task} on the ingest thread each time the queue has run dry,
+     * so at least every IDLE_PARK_NANOS while nothing is being logged.
+     */
+    public void setIdleTask(Runnable task) {
+        this.idleTask = task;
+    }
+
+    public void stop() {
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void submit(LogEntry entry) {
+        // The ingest thread itself, or anything logging after shutdown, must
+        // not wait on a queue nobody is draining.
+        if (!running || Thread.currentThread() == consumer) {
+            LogBuffer.getInstance().add(entry);
+            return;
+        }
+
+        while (!queue.offer(entry)) {
+            switch (policy) {
+                case DROP_NEWEST -> {
+                    dropped.increment();
+                    return;
+                }
+                case DROP_OLDEST -> {
+                    if (queue.poll() != null) {
+                        dropped.increment();
+                    }
+                }
+                case BLOCK -> {
+                    Metrics.WAITS.increment();
+                    LockSupport.unpark(consumer);
+                    LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                    if (!running) {
+                        LogBuffer.getInstance().add(entry);
+                        return;
+                    }
+                }
+            }
+        }
+        published.increment();
+        if (idle) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    private void drainLoop() {
+        while (running) {
+            if (drainBatch() == 0) {
+                Runnable task = idleTask;
+                if (task != null) {
+                    task.run();
+                }
+                idle = true;
+                if (queue.size() == 0 && running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                idle = false;
+            }
+        }
+        while (drainBatch() > 0) {
+            // flush whatever was queued before shutdown
+        }
+    }
+
+    private int drainBatch() {
+        LogBuffer buffer = LogBuffer.getInstance();
+        TemplateMiner miner = TemplateMiner.getInstance();
+        JfrEvents.AppendBatch event = new JfrEvents.AppendBatch();
+        boolean traced = event.isEnabled();
+        event.begin();
+        int count = 0;
+        long bytes = 0;
+        LogEntry entry;
+        while (count < batchSize && (entry = queue.poll()) != null) {
+            if (traced) {
+                bytes += entry.estimatedBytes();
+            }
+            buffer.add(entry, miner != null ? miner.assign(entry) : entry.templateId());
+            count++;
+        }
+        if (count > 0) {
+            if (traced) {
+                long drops = dropped.sum();
+                event.finish(count, bytes, drops - reportedDrops);
+                reportedDrops = drops;
+            }
+            batches.increment();
+            TrigramIndex index = TrigramIndex.getInstance();
+            if (index != null) {
+                index.update();
+            }
+        }
+        return count;
+    }
+
+    public OverflowPolicy policy() {
+        return policy;
+    }
+
+    public long publishedCount() {
+        return published.sum();
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    public long batchCount() {
+        return batches.sum();
+    }
+
+    public int queuedCount() {
+        return queue.size();
+    }
+
+    public int queueCapacity() {
+        return queue.capacity();
+    }
+}
@@ -0,0 +1,554 @@
+package dev.logviewer.log;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/*
+ * Sequence numbers of the buffer entries that pass the current filter. Each
+ * refresh only examines entries appended since the previous one and trims
+ * evicted sequences from the front; the index is rebuilt from scratch only
+ * when the filter itself changes. Not thread-safe, meant to be owned by a
+ * single renderer.
+ *
+ * In background mode that rebuild runs on a virtual thread once the filter
+ * has been left alone for a moment, scanning from the newest entry back. The
+ * previous rows stay in place until the search finishes, or, for a search
+ * that takes a while, until its first partial result is published. A filter
+ * change cancels the search in flight.
+ *
+ * With a SpillStore, loadOlder() pages matching rows from disk in front of
+ * the in-memory ones. Paged rows are kept until the filter changes.
+ */
+public class FilteredView {
+    private static final long DEBOUNCE_NANOS = TimeUnit.MILLISECONDS.toNanos(150);
+    private static final long PUBLISH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int CHUNK = 4096;
+    private static final int CATCH_UP_SLACK = 256;
+
+    private final LogSource source;
+    private final TrigramIndex index;
+    private final SpillStore spill;
+    private final boolean background;
+
+    private String filterText = "";
+    private boolean showInfo = true;
+    private boolean showWarn = true;
+    private boolean showError = true;
+    private boolean showDebug = true;
+    private LogQuery pendingQuery = LogQuery.compile("");
+    private int pendingMask = LogLevel.ALL;
+
+    private LogQuery query = pendingQuery;
+    private int levelMask = LogLevel.ALL;
+
+    private long[] sequences = new long[256];
+    private int start = 0;
+    private int end = 0;
+    private long scannedUpTo = 0;
+    private long coveredFrom = 0;
+    private long pagedFrom = Long.MAX_VALUE;
+    private boolean dirty = true;
+    private boolean searched = false;
+    private Search search;
+    private Result adopted;
+    private final LogSource.EntryConsumer collector = this::collect;
+    private final LogSource.EntryConsumer pager = this::page;
+    private long[] paged = new long[256];
+    private int pagedCount = 0;
+
+    public FilteredView(LogSource source) {
+        this(source, null, null, false);
+    }
+
+    public FilteredView(LogSource source, TrigramIndex index) {
+        this(source, index, null, false);
+    }
+
+    public FilteredView(LogSource source, TrigramIndex index, SpillStore spill, boolean background) {
+        this.source = source;
+        this.index = index;
+        this.spill = spill;
+        this.background = background;
+    }
+
+    public void setFilter(String filterText, boolean showInfo, boolean showWarn, boolean showError, boolean showDebug) {
+        String text = filterText == null ? "" : filterText;
+        if (text.equals(this.filterText) && showInfo == this.showInfo && showWarn == this.showWarn
+                && showError == this.showError && showDebug == this.showDebug) {
+            return;
+        }
+        if (!text.equals(this.filterText)) {
+            this.pendingQuery = LogQuery.compile(text);
+        }
+        this.filterText = text;
+        this.showInfo = showInfo;
+        this.showWarn = showWarn;
+        this.showError = showError;
+        this.showDebug = showDebug;
+        this.pendingMask = LogLevel.mask(showInfo, showWarn, showError, showDebug) & pendingQuery.levelMask();
+        this.dirty = true;
+    }
+
+    public void invalidate() {
+        dirty = true;
+    }
+
+    public void refresh() {
+        long started = Metrics.start();
+        // In background mode the search brings the index up to date itself;
+        // waiting on it here could stall a frame behind a running search.
+        if (index != null && !background) {
+            index.update();
+        }
+
+        if (dirty) {
+            dirty = false;
+            startSearch();
+        }
+        if (search != null) {
+            Result result = search.result;
+            if (result != null && result != adopted) {
+                adopt(result);
+            }
+            if (result != null && result.complete) {
+                search = null;
+            }
+        }
+
+        // Evicted rows stay readable from disk while history is paged in.
+        long first = source.firstSequence();
+        coveredFrom = pagedFrom < first ? Math.max(pagedFrom, spill.firstSequence()) : first;
+        while (start < end && sequences[start] < coveredFrom) {
+            start++;
+        }
+
+        long from = Math.max(scannedUpTo, first);
+        int pending = (int) Math.min(Integer.MAX_VALUE, source.nextSequence() - from);
+        scannedUpTo = source.forEachInRange(from, pending, levelMask, collector);
+        Metrics.FILTER.record(started);
+    }
+
+    /**
+     * Whether a search for the latest filter is still running; until it
+     * finishes, the rows may belong to the previous filter or be partial.
+     */
+    public boolean isSearching() {
+        return search != null || dirty;
+    }
+
+    public LogQuery query() {
+        return pendingQuery;
+    }
+
+    public int size() {
+        return end - start;
+    }
+
+    public long sequenceAt(int row) {
+        return sequences[start + row];
+    }
+
+    /**
+     * Row of the first entry at or after {@code seq}, or {@link #size()} if
+     * every row is older. Rows stay sorted by sequence, so a sequence kept
+     * as a scroll anchor maps back to its row however the rows around it
+     * have moved.
+     */
+    public int rowOf(long seq) {
+        int index = Arrays.binarySearch(sequences, start, end, seq);
+        return (index >= 0 ? index : -index - 1) - start;
+    }
+
+    /**
+     * Oldest sequence the rows can still include. Anything before it has
+     * been evicted, or is on disk and not paged in.
+     */
+    public long coveredFrom() {
+        return coveredFrom;
+    }
+
+    public LogEntry get(int row) {
+        return entry(sequenceAt(row));
+    }
+
+    /**
+     * Level ordinal of a row, or -1 if it is no longer readable. Avoids
+     * materializing rows that are still in memory.
+     */
+    public int levelAt(int row) {
+        long seq = sequenceAt(row);
+        if (seq >= source.firstSequence() || spill == null) {
+            return source.levelAt(seq);
+        }
+        LogEntry entry = spill.get(seq);
+        return entry != null ? entry.levelOrdinal() : -1;
+    }
+
+    /**
+     * Repeat count of a row, or 0 if it is no longer readable. Repeats keep
+     * being added to rows that are already shown.
+     */
+    public int repeatCountAt(int row) {
+        long seq = sequenceAt(row);
+        if (seq >= source.firstSequence() || spill == null) {
+            return source.repeatCountAt(seq);
+        }
+        LogEntry entry = spill.get(seq);
+        return entry != null ? entry.repeatCount() : 0;
+    }
+
+    public void forEachInRange(int fromRow, int count, RowConsumer consumer) {
+        int from = Math.max(0, fromRow);
+        int to = (int) Math.min(size(), (long) fromRow + count);
+        for (int row = from; row < to; row++) {
+            LogEntry entry = entry(sequences[start + row]);
+            if (entry != null) {
+                consumer.accept(row, entry);
+            }
+        }
+    }
+
+    /**
+     * Queues an export of the current rows. Only their sequence numbers are
+     * copied here; the export thread reads the entries themselves.
+     */
+    public LogExporter.Job export(Path target, boolean gzip, Consumer<LogExporter.Job> onFinish) {
+        long[] rows = Arrays.copyOfRange(sequences, start, end);
+        return LogExporter.getInstance().submit(target, source, spill, rows, gzip, onFinish);
+    }
+
+    /**
+     * Scans up to {@code maxScan} spilled entries older than the oldest row
+     * and puts the matching ones in front.
+     *
+     * @return the number of rows added at the top
+     */
+    public int loadOlder(int maxScan) {
+        if (spill == null || search != null) return 0;
+
+        long to = coveredFrom;
+        // Entries still queued for the spill writer would leave a gap.
+        if (spill.nextSequence() < to) return 0;
+        long from = Math.max(spill.firstSequence(), to - maxScan);
+        if (from >= to) return 0;
+
+        pagedCount = 0;
+        spill.forEachInRange(from, (int) (to - from), pager);
+        prepend(paged, pagedCount);
+        pagedFrom = from;
+        coveredFrom = from;
+        return pagedCount;
+    }
+
+    private LogEntry entry(long seq) {
+        return entry(source, spill, seq);
+    }
+
+    // Rows older than the source's window come from the spill store.
+    static LogEntry entry(LogSource source, SpillStore spill, long seq) {
+        LogEntry entry = source.get(seq);
+        if (entry == null && spill != null && seq < source.firstSequence()) {
+            entry = spill.get(seq);
+        }
+        return entry;
+    }
+
+    private void prepend(long[] older, int count) {
+        if (count == 0) return;
+        if (start < count) {
+            int size = size();
+            long[] grown = new long[count + size + Math.max(256, size / 2)];
+            System.arraycopy(sequences, start, grown, count, size);
+            sequences = grown;
+            start = count;
+            end = count + size;
+        }
+        start -= count;
+        System.arraycopy(older, 0, sequences, start, count);
+    }
+
+    private void page(long seq, LogEntry entry) {
+        if ((levelMask & (1 << entry.levelOrdinal())) == 0 || !query.matches(entry)) return;
+        if (pagedCount == paged.length) {
+            paged = Arrays.copyOf(paged, paged.length * 2);
+        }
+        paged[pagedCount++] = seq;
+    }
+
+    private void startSearch() {
+        if (search != null) {
+            search.cancelled = true;
+            search = null;
+        }
+
+        // The worker gets its own compiled query; compiled queries keep
+        // per-node scratch state.
+        Search next = new Search(
+            source,
+            index,
+            background ? LogQuery.compile(filterText) : pendingQuery,
+            pendingQuery,
+            pendingMask,
+            background && searched ? DEBOUNCE_NANOS : 0
+        );
+        searched = true;
+
+        if (background) {
+            search = next;
+            Thread.ofVirtual().name("LogViewer-Search").start(next);
+        } else {
+            next.run();
+            adopt(next.result);
+        }
+    }
+
+    private void adopt(Result result) {
+        query = result.search.viewQuery;
+        levelMask = result.search.levelMask;
+        sequences = result.sequences;
+        start = 0;
+        end = result.size;
+        scannedUpTo = result.upTo;
+        pagedFrom = Long.MAX_VALUE;
+        adopted = result;
+    }
+
+    private void collect(long seq, LogEntry entry) {
+        if (query.matches(entry)) {
+            append(seq);
+        }
+    }
+
+    private void append(long seq) {
+        if (end == sequences.length) {
+            int count = end - start;
+            if (start > sequences.length / 2) {
+                System.arraycopy(sequences, start, sequences, 0, count);
+            } else {
+                long[] grown = new long[Math.max(256, sequences.length * 2)];
+                System.arraycopy(sequences, start, grown, 0, count);
+                sequences = grown;
+            }
+            start = 0;
+            end = count;
+        }
+        sequences[end++] = seq;
+    }
+
+    /*
+     * A full rebuild of the rows for one filter. Walks the buffer from the
+     * newest entry back in chunks, so a partial result already holds the
+     * rows a tailing view shows, and checks for cancellation between chunks.
+     */
+    private static final class Search implements Runnable {
+        final LogSource source;
+        final TrigramIndex index;
+        final LogQuery query;
+        final LogQuery viewQuery;
+        final int levelMask;
+        final long delayNanos;
+
+        volatile boolean cancelled = false;
+        volatile Result result;
+
+        private long[] found = new long[256];
+        private int foundCount = 0;
+        private long[] newer = new long[0];
+        private int newerCount = 0;
+        private long[] chunk = new long[256];
+        private int chunkCount = 0;
+        private long upTo = -1;
+        private long lastPublish;
+        private long scanned = 0;
+
+        private final LogSource.EntryConsumer collector = this::collect;
+
+        Search(
+            LogSource source,
+            TrigramIndex index,
+            LogQuery query,
+            LogQuery viewQuery,
+            int levelMask,
+            long delayNanos
+        ) {
+            this.source = source;
+            this.index = index;
+            this.query = query;
+            this.viewQuery = viewQuery;
+            this.levelMask = levelMask;
+            this.delayNanos = delayNanos;
+        }
+
+        @Override
+        public void run() {
+            if (delayNanos > 0) {
+                long deadline = System.nanoTime() + delayNanos;
+                long remaining;
+                while (!cancelled && (remaining = deadline - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(remaining);
+                }
+            }
+            if (cancelled) return;
+
+            JfrEvents.FilterRebuild event = new JfrEvents.FilterRebuild();
+            event.begin();
+            lastPublish = System.nanoTime();
+            String required = query.requiredText();
+            boolean indexed = index != null && TrigramIndex.canAnswer(required);
+            if (indexed) {
+                searchIndexed(required);
+            } else {
+                searchRange(source.firstSequence(), source.nextSequence(), null);
+            }
+            catchUp();
+            if (!cancelled) {
+                publish(true);
+            }
+            event.finish(scanned, foundCount + newerCount, indexed, cancelled);
+        }
+
+        // Lines keep arriving while a long search runs. Scan them here rather
+        // than leaving the whole backlog to the first frame after adoption.
+        private void catchUp() {
+            while (!cancelled && upTo >= 0) {
+                long next = source.nextSequence();
+                if (next - upTo <= CATCH_UP_SLACK) return;
+                chunkCount = 0;
+                long reached = source.forEachInRange(upTo, (int) Math.min(CHUNK, next - upTo), levelMask, collector);
+                for (int i = 0; i < chunkCount; i++) {
+                    newer = append(newer, newerCount++, chunk[i]);
+                }
+                if (reached == upTo) return;
+                upTo = reached;
+            }
+        }
+
+        private void searchIndexed(String required) {
+            TrigramIndex.Candidates candidates = index.candidates(required);
+            long first = source.firstSequence();
+            long coveredFrom = Math.max(first, candidates.coveredFrom());
+            long coveredUpTo = Math.max(coveredFrom, candidates.coveredUpTo());
+            searchRange(coveredFrom, coveredUpTo, candidates);
+            if (coveredFrom > first) {
+                searchRange(first, coveredFrom, null);
+            }
+        }
+
+        // Collects matches in [from, to) newest chunk first. Without
+        // candidates every entry in the range is examined.
+        private void searchRange(long from, long to, TrigramIndex.Candidates candidates) {
+            boolean[] loggerMatches = null;
+            if (candidates != null) {
+                // The index only covers messages; logger names are checked
+                // against the logger id column.
+                loggerMatches = NameTable.LOGGERS.matching(query.requiredText());
+                boolean anyLogger = false;
+                for (boolean match : loggerMatches) {
+                    anyLogger |= match;
+                }
+                if (!anyLogger) {
+                    loggerMatches = null;
+                }
+            }
+
+            boolean newest = upTo < 0;
+            for (long hi = to; hi > from && !cancelled; ) {
+                long lo = Math.max(from, hi - CHUNK);
+                chunkCount = 0;
+                long reached;
+                if (candidates == null) {
+                    reached = source.forEachInRange(lo, (int) (hi - lo), levelMask, collector);
+                } else {
+                    reached = verify(lo, hi, candidates, loggerMatches);
+                }
+                if (newest) {
+                    // Anything past an unpublished slot is left to the view's
+                    // incremental scan.
+                    upTo = reached;
+                    newest = false;
+                }
+                for (int i = chunkCount - 1; i >= 0; i--) {
+                    if (chunk[i] < upTo) {
+                        found = append(found, foundCount++, chunk[i]);
+                    }
+                }
+                hi = lo;
+
+                if (System.nanoTime() - lastPublish > PUBLISH_INTERVAL_NANOS) {
+                    publish(false);
+                }
+            }
+        }
+
+        private long verify(long lo, long hi, TrigramIndex.Candidates candidates, boolean[] loggerMatches) {
+            long[] sequences = candidates.sequences();
+            int size = candidates.size();
+            int next = Arrays.binarySearch(sequences, 0, size, lo);
+            if (next < 0) next = -next - 1;
+
+            if (loggerMatches == null) {
+                for (; next < size && sequences[next] < hi; next++) {
+                    verify(sequences[next]);
+                }
+                return hi;
+            }
+            for (long seq = lo; seq < hi; seq++) {
+                if (next < size && sequences[next] == seq) {
+                    next++;
+                    verify(seq);
+                    continue;
+                }
+                int loggerId = source.loggerIdAt(seq);
+                if (loggerId >= 0 && loggerId < loggerMatches.length && loggerMatches[loggerId]) {
+                    verify(seq);
+                }
+            }
+            return hi;
+        }
+
+        private void verify(long seq) {
+            int level = source.levelAt(seq);
+            if (level < 0 || (levelMask & (1 << level)) == 0) return;
+            LogEntry entry = source.get(seq);
+            if (entry != null) {
+                collect(seq, entry);
+            }
+        }
+
+        private void collect(long seq, LogEntry entry) {
+            scanned++;
+            if (!query.matches(entry)) return;
+            chunk = append(chunk, chunkCount++, seq);
+        }
+
+        private static long[] append(long[] array, int count, long seq) {
+            if (count == array.length) {
+                array = Arrays.copyOf(array, Math.max(256, array.length * 2));
+            }
+            array[count] = seq;
+            return array;
+        }
+
+        // Hands the view a fresh ascending copy; the view may append to it.
+        private void publish(boolean complete) {
+            int size = foundCount + newerCount;
+            long[] ascending = new long[Math.max(size + 64, 256)];
+            for (int i = 0; i < foundCount; i++) {
+                ascending[i] = found[foundCount - 1 - i];
+            }
+            System.arraycopy(newer, 0, ascending, foundCount, newerCount);
+            result = new Result(this, ascending, size, Math.max(0, upTo), complete);
+            lastPublish = System.nanoTime();
+        }
+    }
+
+    private record Result(Search search, long[] sequences, int size, long upTo, boolean complete) {}
+
+    @FunctionalInterface
+    public interface RowConsumer {
+        void accept(int row, LogEntry entry);
+    }
+}
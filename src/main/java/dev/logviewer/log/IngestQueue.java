@@ -0,0 +1,79 @@
+package dev.logviewer.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Bounded multi-producer multi-consumer array queue (Vyukov). Every cell
+ * carries a sequence that tells producers and consumers whether it is free
+ * for the current lap, so both sides only ever CAS a position counter.
+ * Producers may also poll, which is how the drop-oldest overflow policy
+ * makes room.
+ */
+final class IngestQueue<E> {
+    private final int mask;
+    private final Object[] items;
+    private final AtomicLongArray cells;
+    private final AtomicLong enqueuePos = new AtomicLong();
+    private final AtomicLong dequeuePos = new AtomicLong();
+
+    IngestQueue(int requestedCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+        this.mask = capacity - 1;
+        this.items = new Object[capacity];
+        this.cells = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            cells.set(i, i);
+        }
+    }
+
+    boolean offer(E item) {
+        long pos = enqueuePos.get();
+        int index;
+        while (true) {
+            index = (int) (pos & mask);
+            long diff = cells.get(index) - pos;
+            if (diff == 0) {
+                if (enqueuePos.compareAndSet(pos, pos + 1)) break;
+                pos = enqueuePos.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = enqueuePos.get();
+            }
+        }
+        items[index] = item;
+        cells.set(index, pos + 1);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    E poll() {
+        long pos = dequeuePos.get();
+        int index;
+        while (true) {
+            index = (int) (pos & mask);
+            long diff = cells.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (dequeuePos.compareAndSet(pos, pos + 1)) break;
+                pos = dequeuePos.get();
+            } else if (diff < 0) {
+                return null;
+            } else {
+                pos = dequeuePos.get();
+            }
+        }
+        E item = (E) items[index];
+        items[index] = null;
+        cells.set(index, pos + mask + 1);
+        return item;
+    }
+
+    int size() {
+        return (int) Math.max(0, enqueuePos.get() - dequeuePos.get());
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,159 @@
+package dev.logviewer.log;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+ * Flight Recorder events for the viewer's own work, so a recording shows
+ * capture, filtering, rendering and exports next to GC and tick stalls.
+ * All of them are disabled unless a recording settings file turns them on,
+ * e.g. with "dev.logviewer.FrameRender#enabled=true". While disabled, an
+ * event is an object the JIT can scalar-replace and a few checks that
+ * always fail; the fields are only filled in once shouldCommit() says the
+ * event will be recorded.
+ */
+public final class JfrEvents {
+    private static final String CATEGORY = "Log Viewer";
+
+    private JfrEvents() {}
+
+    @Name("dev.logviewer.AppendBatch")
+    @Label("Log Append Batch")
+    @Description("Captured lines moved into the log buffer")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class AppendBatch extends Event {
+        @Label("Lines")
+        int count;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Dropped")
+        @Description("Lines dropped from the ingest queue since the previous batch")
+        long dropped;
+
+        void finish(int count, long bytes, long dropped) {
+            end();
+            if (shouldCommit()) {
+                this.count = count;
+                this.bytes = bytes;
+                this.dropped = dropped;
+                commit();
+            }
+        }
+    }
+
+    @Name("dev.logviewer.FilterRebuild")
+    @Label("Log Filter Rebuild")
+    @Description("Full scan of the buffer for a new filter")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class FilterRebuild extends Event {
+        @Label("Entries Scanned")
+        long scanned;
+
+        @Label("Entries Matched")
+        long matched;
+
+        @Label("Indexed")
+        @Description("Whether trigram index candidates narrowed the scan")
+        boolean indexed;
+
+        @Label("Cancelled")
+        boolean cancelled;
+
+        void finish(long scanned, long matched, boolean indexed, boolean cancelled) {
+            end();
+            if (shouldCommit()) {
+                this.scanned = scanned;
+                this.matched = matched;
+                this.indexed = indexed;
+                this.cancelled = cancelled;
+                commit();
+            }
+        }
+    }
+
+    @Name("dev.logviewer.FrameRender")
+    @Label("Log Viewer Frame")
+    @Description("One frame of the HUD overlay or the log viewer screen")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class FrameRender extends Event {
+        @Label("View")
+        String view;
+
+        @Label("Rows Drawn")
+        int rows;
+
+        @Label("Line Cache Hits")
+        int cacheHits;
+
+        public FrameRender(String view) {
+            this.view = view;
+        }
+
+        public void finish(int rows, int cacheHits) {
+            end();
+            if (shouldCommit()) {
+                this.rows = rows;
+                this.cacheHits = cacheHits;
+                commit();
+            }
+        }
+    }
+
+    @Name("dev.logviewer.Export")
+    @Label("Log Export")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class Export extends Event {
+        @Label("Target")
+        String target;
+
+        @Label("Lines")
+        int lines;
+
+        @Label("Bytes")
+        @Description("Size of the written file, after compression if gzipped")
+        @DataAmount
+        long bytes;
+
+        @Label("Gzip")
+        boolean gzip;
+
+        @Label("Failed")
+        boolean failed;
+
+        void finish(Path target, int lines, boolean gzip, boolean failed) {
+            end();
+            if (shouldCommit()) {
+                this.target = target.toString();
+                this.lines = lines;
+                try {
+                    this.bytes = failed ? 0 : Files.size(target);
+                } catch (IOException e) {
+                    this.bytes = 0;
+                }
+                this.gzip = gzip;
+                this.failed = failed;
+                commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package dev.logviewer.log;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.UUID;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.message.ReusableParameterizedMessage;
+
+/*
+ * A "{}"-style message whose formatting is deferred until someone reads it.
+ * Only captured when every parameter is a value type that cannot change after
+ * the logging call returns, so formatting later yields the same text log4j
+ * would have produced at the time. The result is memoized.
+ */
+final class LazyMessage {
+    private static final int OVERHEAD = 64;
+    private static final int PARAMETER_ESTIMATE = 16;
+
+    private static final Set<Class<?>> IMMUTABLE_TYPES = Set.of(
+        String.class,
+        Integer.class,
+        Long.class,
+        Short.class,
+        Byte.class,
+        Double.class,
+        Float.class,
+        Boolean.class,
+        Character.class,
+        BigInteger.class,
+        BigDecimal.class,
+        UUID.class
+    );
+
+    private final String format;
+    private final Object[] parameters;
+    private volatile String formatted;
+
+    private LazyMessage(String format, Object[] parameters) {
+        this.format = format;
+        this.parameters = parameters;
+    }
+
+    /**
+     * Returns either the formatted String or a LazyMessage that can format
+     * it later. The returned value never references the log4j message, which
+     * may be reused by log4j as soon as the logging call returns.
+     */
+    static Object capture(Message message) {
+        String format;
+        Object[] parameters;
+        if (message instanceof ReusableParameterizedMessage reusable) {
+            format = reusable.getFormat();
+            parameters = reusable.getParameters();
+        } else if (message instanceof ParameterizedMessage parameterized) {
+            format = parameterized.getFormat();
+            parameters = parameterized.getParameters();
+        } else {
+            return message.getFormattedMessage();
+        }
+        if (format == null || parameters == null || parameters.length == 0) {
+            return message.getFormattedMessage();
+        }
+        Object[] frozen = parameters.clone();
+        for (Object parameter : frozen) {
+            if (parameter != null && !isImmutable(parameter)) {
+                return message.getFormattedMessage();
+            }
+        }
+        return new LazyMessage(format, frozen);
+    }
+
+    /**
+     * Rebuilds a lazy message from a format pattern and parameters that were
+     * captured by {@link #capture} and are therefore safe to keep.
+     */
+    static LazyMessage restore(String format, Object[] parameters) {
+        return new LazyMessage(format, parameters);
+    }
+
+    /**
+     * The frozen parameters of a lazy message, or null for formatted text.
+     * The array must not be modified.
+     */
+    static Object[] parameters(Object message) {
+        return message instanceof LazyMessage lazy ? lazy.parameters : null;
+    }
+
+    static String text(Object message) {
+        return message instanceof LazyMessage lazy ? lazy.get() : (String) message;
+    }
+
+    /**
+     * The format pattern of a lazy message, or the text of a formatted one.
+     */
+    static String pattern(Object message) {
+        return message instanceof LazyMessage lazy ? lazy.format : (String) message;
+    }
+
+    /**
+     * Whether two captured messages are known to have the same text, without
+     * formatting either. A lazy and an already formatted message never
+     * compare equal.
+     */
+    static boolean sameText(Object a, Object b) {
+        if (a instanceof LazyMessage lazyA && b instanceof LazyMessage lazyB) {
+            return lazyA.format.equals(lazyB.format) && Arrays.equals(lazyA.parameters, lazyB.parameters);
+        }
+        return a instanceof String && a.equals(b);
+    }
+
+    static long estimatedLength(Object message) {
+        if (message instanceof LazyMessage lazy) {
+            return lazy.estimatedLength();
+        }
+        return ((String) message).length();
+    }
+
+    String get() {
+        String result = formatted;
+        if (result == null) {
+            result = ParameterizedMessage.format(format, parameters);
+            formatted = result;
+        }
+        return result;
+    }
+
+    private long estimatedLength() {
+        long length = OVERHEAD + format.length();
+        for (Object parameter : parameters) {
+            length += parameter instanceof String s ? s.length() : PARAMETER_ESTIMATE;
+        }
+        return length;
+    }
+
+    private static boolean isImmutable(Object parameter) {
+        return IMMUTABLE_TYPES.contains(parameter.getClass()) || parameter instanceof Enum<?>;
+    }
+}
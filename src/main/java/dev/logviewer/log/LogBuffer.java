@@ -1,88 +1,409 @@
 package dev.logviewer.log;
 
+import java.lang.invoke.VarHandle;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.function.Predicate;
 
-public class LogBuffer {
-    private static final LogBuffer INSTANCE = new LogBuffer(2000);
+/*
+ * Multi-producer ring buffer. Producers claim a global sequence number with a
+ * fetch-and-add on the tail and own slot (seq % capacity) until they publish
+ * it by storing seq into the slot's sequence cell. Readers only trust a slot
+ * whose sequence cell holds the expected value both before and after reading
+ * the entry, so neither side ever blocks the other.
+ *
+ * Slots are stored as parallel primitive columns rather than LogEntry
+ * objects, with logger and thread names interned to ids. Level masks are
+ * checked straight against the level column; a LogEntry view is only built
+ * for slots that survive that check.
+ *
+ * The window is bounded both by slot count and by an approximate byte budget.
+ * The head sequence only moves forward through evictOldest(), which is the
+ * single place retained bytes are given back, so each entry is accounted for
+ * exactly once no matter which thread evicts it. The same CAS decides which
+ * thread hands the evicted entry to the eviction listener, if there is one.
+ *
+ * A line identical in level, logger, message and stack to one of the last
+ * few published slots does not take a slot of its own; it bumps that slot's
+ * repeat count and last timestamp instead. Those two columns change after
+ * publication, so readers may see them a moment late. The slot is assumed
+ * not to be recycled between the match and the increment, which would take
+ * a full lap of the ring while one producer is between two instructions.
+ */
+public class LogBuffer implements LogSource {
+    public static final int DEFAULT_MAX_ENTRIES = 50_000;
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    public static final int DEFAULT_COLLAPSE_WINDOW = 8;
+
+    // Created on first use, so the default-sized columns are never allocated
+    // when configure() runs first, as it does at mod initialization.
+    private static volatile LogBuffer instance;
+
+    private static final long WRITING = Long.MIN_VALUE;
 
-    private final LogEntry[] buffer;
     private final int capacity;
-    private int head = 0;
-    private int size = 0;
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final long maxBytes;
+    private final int collapseWindow;
+    private final AtomicLongArray sequences;
+    private final long[] timestamps;
+    private final byte[] levels;
+    private final int[] loggerIds;
+    private final int[] threadIds;
+    private final Object[] messages;
+    private final long[] sizes;
+    private final AtomicIntegerArray repeats;
+    private final long[] lastTimestamps;
+    private final int[] templateIds;
+    private final ThrowableSnapshot[] thrown;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private volatile EntryConsumer evictionListener;
 
     public LogBuffer(int capacity) {
+        this(capacity, Long.MAX_VALUE);
+    }
+
+    public LogBuffer(int capacity, long maxBytes) {
+        this(capacity, maxBytes, 0);
+    }
+
+    public LogBuffer(int capacity, long maxBytes, int collapseWindow) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
         this.capacity = capacity;
-        this.buffer = new LogEntry[capacity];
+        this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+        this.collapseWindow = Math.max(0, Math.min(collapseWindow, capacity / 2));
+        this.sequences = new AtomicLongArray(capacity);
+        this.timestamps = new long[capacity];
+        this.levels = new byte[capacity];
+        this.loggerIds = new int[capacity];
+        this.threadIds = new int[capacity];
+        this.messages = new Object[capacity];
+        this.sizes = new long[capacity];
+        this.repeats = new AtomicIntegerArray(capacity);
+        this.lastTimestamps = new long[capacity];
+        this.templateIds = new int[capacity];
+        this.thrown = new ThrowableSnapshot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i - (long) capacity);
+        }
     }
 
     public static LogBuffer getInstance() {
-        return INSTANCE;
+        LogBuffer buffer = instance;
+        if (buffer == null) {
+            synchronized (LogBuffer.class) {
+                buffer = instance;
+                if (buffer == null) {
+                    buffer = new LogBuffer(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES, DEFAULT_COLLAPSE_WINDOW);
+                    instance = buffer;
+                }
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Replaces the shared buffer. Meant to be called once from mod
+     * initialization, before capture is installed; entries already in the old
+     * buffer are not carried over.
+     */
+    public static void configure(int maxEntries, long maxBytes, int collapseWindow) {
+        LogBuffer buffer = new LogBuffer(maxEntries, maxBytes, collapseWindow);
+        synchronized (LogBuffer.class) {
+            instance = buffer;
+        }
     }
 
     public void add(LogEntry entry) {
-        lock.writeLock().lock();
+        add(entry, entry.templateId());
+    }
+
+    /**
+     * Adds {@code entry} under {@code templateId}, as assigned by the
+     * template miner on the ingest thread.
+     */
+    public void add(LogEntry entry, int templateId) {
+        long start = Metrics.start();
         try {
-            buffer[head] = entry;
-            head = (head + 1) % capacity;
-            if (size < capacity) {
-                size++;
-            }
+            append(entry, templateId);
         } finally {
-            lock.writeLock().unlock();
+            Metrics.BUFFER_ADD.record(start);
         }
     }
 
-    public List<LogEntry> getAll() {
-        lock.readLock().lock();
-        try {
-            List<LogEntry> result = new ArrayList<>(size);
-            int start = (head - size + capacity) % capacity;
-            for (int i = 0; i < size; i++) {
-                result.add(buffer[(start + i) % capacity]);
+    private void append(LogEntry entry, int templateId) {
+        if (collapseWindow > 0 && collapse(entry)) return;
+
+        long seq = tail.getAndIncrement();
+        int index = indexOf(seq);
+
+        // A producer a full lap ahead must not overwrite a slot whose previous
+        // owner has not published yet, nor one that is still inside the window.
+        long previous = seq - capacity;
+        if (sequences.get(index) != previous) {
+            Metrics.WAITS.increment();
+            while (sequences.get(index) != previous) {
+                Thread.onSpinWait();
+            }
+        }
+        while (evictOldest(previous + 1, true)) {
+            // keep evicting until the slot's previous entry has left the window
+        }
+
+        long bytes = entry.estimatedBytes();
+        sequences.set(index, WRITING);
+        VarHandle.storeStoreFence();
+        timestamps[index] = entry.timestamp();
+        levels[index] = entry.levelOrdinal();
+        loggerIds[index] = entry.loggerId();
+        threadIds[index] = entry.threadId();
+        messages[index] = entry.rawMessage();
+        sizes[index] = bytes;
+        repeats.set(index, entry.repeatCount());
+        lastTimestamps[index] = entry.lastTimestamp();
+        templateIds[index] = templateId;
+        thrown[index] = entry.thrown();
+        sequences.set(index, seq);
+
+        if (retainedBytes.addAndGet(bytes) > maxBytes) {
+            while (retainedBytes.get() > maxBytes && evictOldest(seq, true)) {
+                // trim the oldest entries until the budget fits again
             }
-            return result;
-        } finally {
-            lock.readLock().unlock();
         }
     }
 
+    @Override
+    public LogEntry get(long seq) {
+        if (seq < head.get() || seq < 0) return null;
+        int index = indexOf(seq);
+        if (sequences.get(index) != seq) return null;
+        LogEntry entry = new LogEntry(
+            seq,
+            timestamps[index],
+            levels[index],
+            loggerIds[index],
+            threadIds[index],
+            messages[index],
+            repeats.get(index),
+            lastTimestamps[index],
+            templateIds[index],
+            thrown[index]
+        );
+        VarHandle.acquireFence();
+        return sequences.get(index) == seq ? entry : null;
+    }
+
+    /**
+     * Level ordinal of a published slot, or -1 if {@code seq} is not
+     * readable. Does not materialize the entry.
+     */
+    @Override
+    public int levelAt(long seq) {
+        if (seq < 0) return -1;
+        int index = indexOf(seq);
+        if (sequences.get(index) != seq) return -1;
+        int level = levels[index];
+        VarHandle.acquireFence();
+        return sequences.get(index) == seq ? level : -1;
+    }
+
+    /**
+     * Logger id of a published slot, or -1 if {@code seq} is not readable.
+     */
+    @Override
+    public int loggerIdAt(long seq) {
+        if (seq < 0) return -1;
+        int index = indexOf(seq);
+        if (sequences.get(index) != seq) return -1;
+        int loggerId = loggerIds[index];
+        VarHandle.acquireFence();
+        return sequences.get(index) == seq ? loggerId : -1;
+    }
+
+    /**
+     * Repeat count of a published slot, or 0 if {@code seq} is not readable.
+     */
+    @Override
+    public int repeatCountAt(long seq) {
+        if (seq < 0) return 0;
+        int index = indexOf(seq);
+        if (sequences.get(index) != seq) return 0;
+        int count = repeats.get(index);
+        return sequences.get(index) == seq ? count : 0;
+    }
+
+    /**
+     * Visits up to {@code count} published entries starting at {@code fromSeq}
+     * without copying them. Evicted sequences are skipped; the walk stops at
+     * the first sequence that has been claimed but not yet published.
+     *
+     * @return the sequence after the last one examined
+     */
+    public long forEachInRange(long fromSeq, int count, EntryConsumer consumer) {
+        return forEachInRange(fromSeq, count, LogLevel.ALL, consumer);
+    }
+
+    /**
+     * Same as {@link #forEachInRange(long, int, EntryConsumer)} but only
+     * materializes slots whose level bit is set in {@code levelMask}.
+     */
+    @Override
+    public long forEachInRange(long fromSeq, int count, int levelMask, EntryConsumer consumer) {
+        long seq = Math.max(fromSeq, firstSequence());
+        long end = Math.min(fromSeq + count, tail.get());
+        for (; seq < end; seq++) {
+            int level = levelAt(seq);
+            if (level < 0) {
+                if (isRetained(seq)) break;
+                continue;
+            }
+            if ((levelMask & (1 << level)) == 0) continue;
+
+            LogEntry entry = get(seq);
+            if (entry != null) {
+                consumer.accept(seq, entry);
+            }
+        }
+        return seq;
+    }
+
+    public List<LogEntry> getAll() {
+        return getFiltered(entry -> true);
+    }
+
     public List<LogEntry> getFiltered(Predicate<LogEntry> filter) {
-        lock.readLock().lock();
-        try {
-            List<LogEntry> result = new ArrayList<>();
-            int start = (head - size + capacity) % capacity;
-            for (int i = 0; i < size; i++) {
-                LogEntry entry = buffer[(start + i) % capacity];
-                if (filter.test(entry)) {
-                    result.add(entry);
-                }
+        long started = Metrics.start();
+        JfrEvents.FilterRebuild event = new JfrEvents.FilterRebuild();
+        event.begin();
+        long end = tail.get();
+        long start = Math.max(head.get(), end - capacity);
+        List<LogEntry> result = new ArrayList<>((int) (end - start));
+        long scanned = 0;
+        for (long seq = start; seq < end; seq++) {
+            LogEntry entry = get(seq);
+            if (entry == null) {
+                if (isRetained(seq)) break;
+                continue;
+            }
+            scanned++;
+            if (filter.test(entry)) {
+                result.add(entry);
             }
-            return result;
-        } finally {
-            lock.readLock().unlock();
         }
+        event.finish(scanned, result.size(), false, false);
+        Metrics.FILTER.record(started);
+        return result;
+    }
+
+    @Override
+    public long firstSequence() {
+        return Math.max(head.get(), tail.get() - capacity);
+    }
+
+    @Override
+    public long nextSequence() {
+        return tail.get();
+    }
+
+    public boolean isRetained(long seq) {
+        return seq >= firstSequence();
+    }
+
+    /**
+     * Registers a consumer for entries leaving the window through normal
+     * eviction. It runs on whichever thread evicted the entry, so it must be
+     * quick and must not log. {@link #clear()} does not notify it.
+     */
+    public void setEvictionListener(EntryConsumer listener) {
+        this.evictionListener = listener;
     }
 
     public void clear() {
-        lock.writeLock().lock();
-        try {
-            head = 0;
-            size = 0;
-        } finally {
-            lock.writeLock().unlock();
+        long end = tail.get();
+        while (evictOldest(end, false)) {
+            // drop everything published before the clear
         }
     }
 
+    @Override
     public int size() {
-        lock.readLock().lock();
-        try {
-            return size;
-        } finally {
-            lock.readLock().unlock();
+        long end = tail.get();
+        return (int) (end - Math.max(head.get(), end - capacity));
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long retainedBytes() {
+        return Math.max(0, retainedBytes.get());
+    }
+
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Moves the head past its current entry if the head is below
+     * {@code limit}, waiting for that entry to be published first.
+     *
+     * @return false once the head has reached {@code limit}
+     */
+    private boolean evictOldest(long limit, boolean notify) {
+        long h = head.get();
+        if (h >= limit) return false;
+
+        int index = indexOf(h);
+        while (sequences.get(index) != h) {
+            if (head.get() != h) return true;
+            Thread.onSpinWait();
+        }
+        long bytes = sizes[index];
+        // Read before the CAS: once the head moves on, a producer may start
+        // overwriting the slot. A losing thread just discards its copy.
+        EntryConsumer listener = notify ? evictionListener : null;
+        LogEntry evicted = listener != null ? get(h) : null;
+        if (head.compareAndSet(h, h + 1)) {
+            retainedBytes.addAndGet(-bytes);
+            if (evicted != null) {
+                listener.accept(h, evicted);
+            }
         }
+        return true;
+    }
+
+    // Counts entry against an identical line among the last collapseWindow
+    // published slots, if there is one.
+    private boolean collapse(LogEntry entry) {
+        long end = tail.get();
+        long from = Math.max(head.get(), end - collapseWindow);
+        byte level = entry.levelOrdinal();
+        int loggerId = entry.loggerId();
+        Object message = entry.rawMessage();
+        ThrowableSnapshot stack = entry.thrown();
+        for (long seq = end - 1; seq >= from; seq--) {
+            int index = indexOf(seq);
+            if (sequences.get(index) != seq) continue;
+            // Snapshots are interned, so the same stack is the same object.
+            boolean same = levels[index] == level && loggerIds[index] == loggerId && thrown[index] == stack
+                && LazyMessage.sameText(messages[index], message);
+            VarHandle.acquireFence();
+            if (!same || sequences.get(index) != seq) continue;
+
+            repeats.incrementAndGet(index);
+            lastTimestamps[index] = entry.timestamp();
+            return true;
+        }
+        return false;
+    }
+
+    private int indexOf(long seq) {
+        return (int) (seq % capacity);
     }
 }
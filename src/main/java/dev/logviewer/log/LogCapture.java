@@ -1,5 +1,9 @@
 package dev.logviewer.log;
 
+import dev.logviewer.LogViewerConfig;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.core.LogEvent;
@@ -12,15 +16,71 @@ public class LogCapture extends AbstractAppender {
     private static LogCapture instance;
     private static boolean installed = false;
 
-    private LogCapture() {
+    private static final String SUMMARY_THREAD = "LogViewer";
+    private static final long SUMMARY_POLL_SECONDS = 1;
+
+    private final AsyncIngest ingest;
+    private final boolean lazyFormatting;
+    private final LoggerFilter filter;
+    private final RateLimiter limiter;
+    private final RateLimiter.SummaryConsumer summaries = this::submitSummary;
+    private ScheduledExecutorService summaryTimer;
+
+    private LogCapture(AsyncIngest ingest, boolean lazyFormatting, LoggerFilter filter, RateLimiter limiter) {
         super("LogViewerCapture", null, PatternLayout.createDefaultLayout(), true, Property.EMPTY_ARRAY);
+        this.ingest = ingest;
+        this.lazyFormatting = lazyFormatting;
+        this.filter = filter;
+        this.limiter = limiter;
     }
 
     public static void install() {
+        install(LogViewerConfig.defaults());
+    }
+
+    public static void install(LogViewerConfig config) {
         if (installed) return;
 
-        instance = new LogCapture();
+        AsyncIngest ingest = null;
+        if (config.captureAsync()) {
+            ingest = new AsyncIngest(
+                config.captureQueueSize(),
+                config.captureOverflowPolicy(),
+                config.captureBatchSize()
+            );
+            ingest.start();
+        }
+        RateLimiter limiter = new RateLimiter(
+            config.captureLoggerRateLimit(),
+            config.captureGlobalRateLimit(),
+            config.captureSampleOverLimit()
+        );
+        instance = new LogCapture(
+            ingest,
+            config.captureLazyFormatting(),
+            LoggerFilter.compile(config.captureFilters()),
+            limiter.isEnabled() ? limiter : null
+        );
         instance.start();
+        if (instance.limiter != null) {
+            // Appends drain summaries too, but once a flood stops nothing
+            // would report its last few seconds until something else logs.
+            if (ingest != null) {
+                ingest.setIdleTask(instance::drainSummaries);
+            } else {
+                instance.summaryTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "LogViewer-RateLimit");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                instance.summaryTimer.scheduleWithFixedDelay(
+                    instance::drainSummaries,
+                    SUMMARY_POLL_SECONDS,
+                    SUMMARY_POLL_SECONDS,
+                    TimeUnit.SECONDS
+                );
+            }
+        }
 
         Logger rootLogger = (Logger) LogManager.getRootLogger();
         rootLogger.addAppender(instance);
@@ -33,18 +93,90 @@ public class LogCapture extends AbstractAppender {
         Logger rootLogger = (Logger) LogManager.getRootLogger();
         rootLogger.removeAppender(instance);
         instance.stop();
+        if (instance.ingest != null) {
+            instance.ingest.stop();
+        }
+        if (instance.summaryTimer != null) {
+            instance.summaryTimer.shutdownNow();
+        }
         installed = false;
     }
 
+    public static AsyncIngest getIngest() {
+        return instance != null ? instance.ingest : null;
+    }
+
+    public static RateLimiter getRateLimiter() {
+        return instance != null ? instance.limiter : null;
+    }
+
     @Override
     public void append(LogEvent event) {
-        String message = event.getMessage().getFormattedMessage();
+        long start = Metrics.start();
+        try {
+            capture(event);
+        } finally {
+            Metrics.APPEND.record(start);
+        }
+    }
+
+    private void capture(LogEvent event) {
+        // Before anything is formatted or allocated for the line.
+        String name = event.getLoggerName();
+        if (name == null) {
+            name = "";
+        }
+        if (filter != null && !filter.accepts(name, event.getLevel())) {
+            Metrics.FILTERED_OUT.increment();
+            return;
+        }
+        if (limiter != null) {
+            drainSummaries();
+            if (!limiter.tryAcquire(name)) return;
+        }
+
+        Object message = lazyFormatting
+            ? LazyMessage.capture(event.getMessage())
+            : event.getMessage().getFormattedMessage();
         Level level = event.getLevel();
         String loggerName = event.getLoggerName();
         String threadName = event.getThreadName();
         long timestamp = event.getTimeMillis();
+        // Copied here: the throwable may change once the logging call returns.
+        Throwable thrown = event.getThrown();
+        ThrowableSnapshot stack = thrown != null ? ThrowableSnapshot.of(thrown) : null;
+
+        Metrics.CAPTURED.increment();
+        submit(new LogEntry(timestamp, level, loggerName, message, threadName, stack));
+    }
+
+    private void drainSummaries() {
+        limiter.drainSummaries(summaries);
+    }
+
+    private void submitSummary(String loggerName, long suppressed) {
+        submit(new LogEntry(
+            System.currentTimeMillis(),
+            Level.WARN,
+            loggerName,
+            "Suppressed " + suppressed + " lines from " + loggerName + " (rate limit)",
+            SUMMARY_THREAD
+        ));
+    }
 
-        LogEntry entry = new LogEntry(timestamp, level, loggerName, message, threadName);
-        LogBuffer.getInstance().add(entry);
+    private void submit(LogEntry entry) {
+        if (ingest != null) {
+            ingest.submit(entry);
+            return;
+        }
+        // Without the ingest thread every line is its own batch.
+        JfrEvents.AppendBatch event = new JfrEvents.AppendBatch();
+        if (event.isEnabled()) {
+            event.begin();
+            LogBuffer.getInstance().add(entry);
+            event.finish(1, entry.estimatedBytes(), 0);
+        } else {
+            LogBuffer.getInstance().add(entry);
+        }
     }
 }
@@ -2,50 +2,252 @@ package dev.logviewer.log;
 
 import org.apache.logging.log4j.Level;
 
-public record LogEntry(
-    long timestamp,
-    Level level,
-    String loggerName,
-    String message,
-    String threadName
-) {
+/*
+ * Immutable view of one buffer slot. The buffer itself stores entries as
+ * parallel columns; a LogEntry is only materialized when something needs to
+ * look at a whole line. Logger and thread names are held as ids into the
+ * shared intern tables.
+ */
+public final class LogEntry {
+    // Object header and fields of the message String, plus one byte per
+    // character for Latin-1 compact strings. Logger and thread names are
+    // interned and the slot columns are preallocated, so neither is counted.
+    private static final int STRING_OVERHEAD = 40;
+
+    private final long sequence;
+    private final long timestamp;
+    private final byte level;
+    private final int loggerId;
+    private final int threadId;
+    private final Object message;
+    private final int repeatCount;
+    private final long lastTimestamp;
+    private final int templateId;
+    private final ThrowableSnapshot thrown;
+
+    public LogEntry(long timestamp, Level level, String loggerName, String message, String threadName) {
+        this(timestamp, level, loggerName, (Object) message, threadName, null);
+    }
+
+    LogEntry(
+        long timestamp,
+        Level level,
+        String loggerName,
+        Object message,
+        String threadName,
+        ThrowableSnapshot thrown
+    ) {
+        this(
+            -1,
+            timestamp,
+            (byte) LogLevel.of(level).ordinal(),
+            NameTable.LOGGERS.idOf(loggerName != null ? loggerName : ""),
+            NameTable.THREADS.idOf(threadName != null ? threadName : ""),
+            message != null ? message : "",
+            1,
+            timestamp,
+            TemplateMiner.NONE,
+            thrown
+        );
+    }
+
+    LogEntry(long sequence, long timestamp, byte level, int loggerId, int threadId, Object message) {
+        this(sequence, timestamp, level, loggerId, threadId, message, 1, timestamp, TemplateMiner.NONE, null);
+    }
+
+    LogEntry(
+        long sequence,
+        long timestamp,
+        byte level,
+        int loggerId,
+        int threadId,
+        Object message,
+        int repeatCount,
+        long lastTimestamp,
+        int templateId,
+        ThrowableSnapshot thrown
+    ) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.level = level;
+        this.loggerId = loggerId;
+        this.threadId = threadId;
+        this.message = message;
+        this.repeatCount = repeatCount;
+        this.lastTimestamp = lastTimestamp;
+        this.templateId = templateId;
+        this.thrown = thrown;
+    }
+
+    public long sequence() {
+        return sequence;
+    }
+
+    public long timestamp() {
+        return timestamp;
+    }
+
+    /**
+     * How many identical lines this entry stands for; 1 unless the buffer
+     * collapsed repeats into it.
+     */
+    public int repeatCount() {
+        return repeatCount;
+    }
+
+    /**
+     * Time of the latest repeat, or {@link #timestamp()} for a single line.
+     */
+    public long lastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * Id of the message template the entry was grouped under, or
+     * {@link TemplateMiner#NONE}.
+     */
+    public int templateId() {
+        return templateId;
+    }
+
+    /**
+     * The throwable logged with the line, or null. Snapshots are shared
+     * between entries that logged the same stack.
+     */
+    public ThrowableSnapshot thrown() {
+        return thrown;
+    }
+
+    public LogLevel logLevel() {
+        return LogLevel.byOrdinal(level);
+    }
+
+    public Level level() {
+        return logLevel().toLog4j();
+    }
+
+    public int loggerId() {
+        return loggerId;
+    }
+
+    public String loggerName() {
+        return NameTable.LOGGERS.nameOf(loggerId);
+    }
+
+    public int threadId() {
+        return threadId;
+    }
+
+    public String threadName() {
+        return NameTable.THREADS.nameOf(threadId);
+    }
+
+    /**
+     * The formatted message text. Messages captured with lazy formatting are
+     * formatted on the first call and memoized.
+     */
+    public String message() {
+        return LazyMessage.text(message);
+    }
+
+    Object rawMessage() {
+        return message;
+    }
+
+    byte levelOrdinal() {
+        return level;
+    }
+
+    public long estimatedBytes() {
+        return STRING_OVERHEAD + LazyMessage.estimatedLength(message);
+    }
+
     public String getShortLoggerName() {
+        String loggerName = loggerName();
         int lastDot = loggerName.lastIndexOf('.');
         return lastDot >= 0 ? loggerName.substring(lastDot + 1) : loggerName;
     }
 
     public String getFormattedTime() {
-        long seconds = timestamp / 1000;
-        long hours = (seconds / 3600) % 24;
-        long minutes = (seconds / 60) % 60;
-        long secs = seconds % 60;
-        return String.format("%02d:%02d:%02d", hours, minutes, secs);
+        return TimestampFormatter.forCurrentThread().format(timestamp);
+    }
+
+    public String getFormattedTime(boolean withMillis) {
+        TimestampFormatter formatter = TimestampFormatter.forCurrentThread();
+        return withMillis ? formatter.formatWithMillis(timestamp) : formatter.format(timestamp);
     }
 
     public String getFormattedMessage() {
-        return String.format("[%s] [%s/%s] %s",
-            getFormattedTime(),
-            getShortLoggerName(),
-            level.name(),
-            message
-        );
+        return getFormattedMessage(false);
+    }
+
+    public String getFormattedMessage(boolean withMillis) {
+        String text = message();
+        StringBuilder line = new StringBuilder(text.length() + 48);
+        appendFormatted(line, withMillis);
+        return line.toString();
+    }
+
+    /**
+     * Appends the same text as {@link #getFormattedMessage(boolean)} without
+     * building an intermediate String.
+     */
+    public void appendFormatted(StringBuilder line, boolean withMillis) {
+        String loggerName = loggerName();
+        line.append('[');
+        TimestampFormatter.forCurrentThread().formatTo(timestamp, withMillis, line);
+        line.append("] [")
+            .append(loggerName, loggerName.lastIndexOf('.') + 1, loggerName.length())
+            .append('/')
+            .append(logLevel().name())
+            .append("] ");
+        // Ahead of the message so truncating a long line keeps it visible.
+        if (repeatCount > 1) {
+            line.append("(x").append(repeatCount).append(") ");
+        }
+        line.append(message());
     }
 
     public boolean matchesFilter(String filter, boolean showInfo, boolean showWarn, boolean showError, boolean showDebug) {
-        boolean levelMatch = switch (level.name()) {
-            case "INFO" -> showInfo;
-            case "WARN" -> showWarn;
-            case "ERROR" -> showError;
-            case "DEBUG" -> showDebug;
-            default -> showInfo;
-        };
+        int levelMask = LogLevel.mask(showInfo, showWarn, showError, showDebug);
+        if ((levelMask & (1 << level)) == 0) return false;
 
-        if (!levelMatch) return false;
+        return matchesText(filter);
+    }
 
+    public boolean matchesText(String filter) {
         if (filter == null || filter.isEmpty()) return true;
 
-        String lowerFilter = filter.toLowerCase();
-        return message.toLowerCase().contains(lowerFilter) ||
-               loggerName.toLowerCase().contains(lowerFilter);
+        return containsIgnoreCase(message(), filter) ||
+               containsIgnoreCase(loggerName(), filter);
+    }
+
+    static boolean containsIgnoreCase(String haystack, String needle) {
+        int length = needle.length();
+        if (length == 0) return true;
+
+        // Cheap first-character check before the full regionMatches. An
+        // ASCII character can only fold to an ASCII needle character through
+        // its upper or lower case; the full fold is left for the rest.
+        char first = needle.charAt(0);
+        char upper = Character.toUpperCase(first);
+        char lower = Character.toLowerCase(first);
+        boolean asciiFirst = first < 0x80;
+        int max = haystack.length() - length;
+        for (int i = 0; i <= max; i++) {
+            char c = haystack.charAt(i);
+            if (c != first && c != upper && c != lower
+                && (asciiFirst && c < 0x80 || !foldEquals(c, first))) continue;
+            if (haystack.regionMatches(true, i, needle, 0, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean foldEquals(char a, char b) {
+        char upperA = Character.toUpperCase(a);
+        char upperB = Character.toUpperCase(b);
+        return upperA == upperB || Character.toLowerCase(upperA) == Character.toLowerCase(upperB);
     }
 }
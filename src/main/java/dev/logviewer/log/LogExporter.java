@@ -0,0 +1,239 @@
+package dev.logviewer.log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Writes exports on a single background thread, one job after another.
+ * Each job owns a copy of the sequence numbers it exports, so later filter
+ * changes do not affect it, and reads the entries itself on the export
+ * thread; the caller never materializes, formats or pages in a line. Rows
+ * that leave the source's window before the job reaches them are read from
+ * the spill store, or skipped if they were not kept. Lines are formatted
+ * into a reusable builder and encoded into a large direct buffer that is
+ * handed to the file channel (or the gzip stream wrapped around it)
+ * whenever it fills up. The output goes to a .part file that is renamed
+ * once complete.
+ */
+public final class LogExporter {
+    private static final LogExporter INSTANCE = new LogExporter();
+
+    private static final int CHUNK_BYTES = 256 * 1024;
+    private static final int CHUNK_CHARS = 64 * 1024;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "LogViewer-Export");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ConcurrentLinkedQueue<Job> jobs = new ConcurrentLinkedQueue<>();
+
+    public static LogExporter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Queues an export of the entries at {@code sequences} in
+     * {@code source}, falling back to {@code spill} (which may be null) for
+     * evicted ones. {@code onFinish} runs on the export thread once the job
+     * is done or has failed.
+     */
+    public Job submit(
+        Path target,
+        LogSource source,
+        SpillStore spill,
+        long[] sequences,
+        boolean gzip,
+        Consumer<Job> onFinish
+    ) {
+        Job job = new Job(target, source, spill, sequences, gzip);
+        jobs.add(job);
+        executor.execute(() -> {
+            try {
+                job.run();
+            } finally {
+                jobs.remove(job);
+                onFinish.accept(job);
+            }
+        });
+        return job;
+    }
+
+    /**
+     * Jobs that are queued or running, oldest first.
+     */
+    public List<Job> pendingJobs() {
+        return List.copyOf(jobs);
+    }
+
+    public enum State {
+        QUEUED,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+
+    public static final class Job {
+        private final Path target;
+        private final LogSource source;
+        private final SpillStore spill;
+        private final long[] sequences;
+        private final boolean gzip;
+        private volatile State state = State.QUEUED;
+        private volatile int written = 0;
+        private volatile String error;
+
+        private Job(Path target, LogSource source, SpillStore spill, long[] sequences, boolean gzip) {
+            this.target = target;
+            this.source = source;
+            this.spill = spill;
+            this.sequences = sequences;
+            this.gzip = gzip;
+        }
+
+        public Path target() {
+            return target;
+        }
+
+        public State state() {
+            return state;
+        }
+
+        public int total() {
+            return sequences.length;
+        }
+
+        public int written() {
+            return written;
+        }
+
+        public float progress() {
+            return sequences.length == 0 ? 1f : (float) written / sequences.length;
+        }
+
+        public String error() {
+            return error;
+        }
+
+        private void run() {
+            state = State.RUNNING;
+            JfrEvents.Export event = new JfrEvents.Export();
+            event.begin();
+            Path part = target.resolveSibling(target.getFileName() + ".part");
+            try {
+                Files.createDirectories(target.toAbsolutePath().getParent());
+                write(part);
+                Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+                state = State.DONE;
+                event.finish(target, written, gzip, false);
+            } catch (IOException | RuntimeException e) {
+                error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+                state = State.FAILED;
+                try {
+                    Files.deleteIfExists(part);
+                } catch (IOException ignored) {
+                    // leave the partial file behind
+                }
+                event.finish(target, written, gzip, true);
+            }
+        }
+
+        private void write(Path part) throws IOException {
+            try (FileChannel file = FileChannel.open(
+                part,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+            )) {
+                if (gzip) {
+                    OutputStream gzipStream = new GZIPOutputStream(Channels.newOutputStream(file), CHUNK_BYTES);
+                    try (WritableByteChannel channel = Channels.newChannel(gzipStream)) {
+                        writeLines(channel);
+                    }
+                } else {
+                    writeLines(file);
+                }
+            }
+        }
+
+        private void writeLines(WritableByteChannel channel) throws IOException {
+            CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            ByteBuffer out = ByteBuffer.allocateDirect(CHUNK_BYTES);
+            StringBuilder lines = new StringBuilder(CHUNK_CHARS + 1024);
+            String newline = System.lineSeparator();
+
+            int count = 0;
+            for (long seq : sequences) {
+                count++;
+                LogEntry entry = FilteredView.entry(source, spill, seq);
+                if (entry == null) continue;
+                entry.appendFormatted(lines, false);
+                lines.append(newline);
+                if (entry.thrown() != null) {
+                    for (String line : entry.thrown().lines()) {
+                        lines.append(line).append(newline);
+                    }
+                }
+                if (lines.length() >= CHUNK_CHARS) {
+                    encode(encoder, lines, out, channel, false);
+                    written = count;
+                }
+            }
+            encode(encoder, lines, out, channel, true);
+            while (encoder.flush(out).isOverflow()) {
+                drain(out, channel);
+            }
+            drain(out, channel);
+            written = count;
+        }
+
+        private static void encode(
+            CharsetEncoder encoder,
+            StringBuilder lines,
+            ByteBuffer out,
+            WritableByteChannel channel,
+            boolean endOfInput
+        ) throws IOException {
+            CharBuffer chars = CharBuffer.wrap(lines);
+            while (true) {
+                CoderResult result = encoder.encode(chars, out, endOfInput);
+                if (result.isOverflow()) {
+                    drain(out, channel);
+                } else {
+                    break;
+                }
+            }
+            // A surrogate pair split at the end of the chunk stays behind.
+            lines.delete(0, chars.position());
+        }
+
+        private static void drain(ByteBuffer out, WritableByteChannel channel) throws IOException {
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            out.clear();
+        }
+    }
+}
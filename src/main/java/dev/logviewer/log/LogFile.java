@@ -0,0 +1,484 @@
+package dev.logviewer.log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/*
+ * A log file on disk viewed through the same interface as the live buffer.
+ * The file is memory-mapped in 1 GB regions; .gz archives are first
+ * decompressed into a temporary file. A background pass records where each
+ * record starts and its level, publishing records as it goes so the view
+ * can show the top of a large file before the pass is done. A record is a
+ * line that starts with a "[time] [thread/LEVEL]" header plus any lines
+ * after it that do not (stack traces). Everything else in the header is
+ * only parsed when an entry is read.
+ *
+ * Vanilla "[12:34:56]" headers carry no date, so they are given the file's
+ * date plus one day each time the clock goes backwards past midnight.
+ *
+ * The file is a snapshot as of opening; lines appended afterwards are not
+ * picked up.
+ */
+public final class LogFile implements LogSource {
+    private static final int REGION_BITS = 30;
+    private static final long REGION_SIZE = 1L << REGION_BITS;
+    private static final int SCAN_BYTES = 64 * 1024;
+    private static final int HEADER_BYTES = 256;
+    private static final int MAX_RECORD_BYTES = 1024 * 1024;
+    private static final int CACHE_SIZE = 1024;
+    // Threads can log slightly out of order, so only a jump back of more
+    // than half a day counts as passing midnight.
+    private static final int ROLLOVER_SECONDS = 12 * 60 * 60;
+
+    private static final Pattern FILE_DATE = Pattern.compile("(\\d{4}-\\d{2}-\\d{2})");
+    private static final DateTimeFormatter HEADER_DATE = DateTimeFormatter.ofPattern("ddMMMyyyy", Locale.ROOT);
+
+    public enum Phase {
+        DECOMPRESSING,
+        INDEXING,
+        READY,
+        FAILED
+    }
+
+    private final Path path;
+    private final Thread loader;
+    private final LogEntry[] cache = new LogEntry[CACHE_SIZE];
+
+    private volatile Phase phase;
+    private volatile float progress = 0f;
+    private volatile String error;
+    private volatile boolean closed = false;
+
+    private volatile MappedByteBuffer[] regions;
+    private volatile Path temp;
+    private LocalDate date;
+
+    // offsets[i] and offsets[i + 1] bound record i for every i < count.
+    private long[] offsets = new long[1024];
+    private byte[] levels = new byte[1024];
+    private volatile int count = 0;
+    // rollovers[i] is the first record of day i + 1 after the file date.
+    private int[] rollovers = new int[4];
+    private int rolloverCount = 0;
+
+    private LogFile(Path path) {
+        this.path = path;
+        this.phase = path.getFileName().toString().endsWith(".gz") ? Phase.DECOMPRESSING : Phase.INDEXING;
+        this.loader = new Thread(this::load, "LogViewer-File");
+        this.loader.setDaemon(true);
+    }
+
+    /**
+     * Starts loading {@code path} in the background. Entries become readable
+     * as the index pass reaches them.
+     */
+    public static LogFile open(Path path) {
+        LogFile file = new LogFile(path);
+        file.loader.start();
+        return file;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public Phase phase() {
+        return phase;
+    }
+
+    /**
+     * Progress of the current phase, from 0 to 1.
+     */
+    public float progress() {
+        return progress;
+    }
+
+    public String error() {
+        return error;
+    }
+
+    public void close() {
+        closed = true;
+        regions = null;
+        Arrays.fill(cache, null);
+        deleteTemp();
+    }
+
+    @Override
+    public LogEntry get(long seq) {
+        if (seq < 0 || seq >= count) return null;
+        int slot = (int) (seq & (CACHE_SIZE - 1));
+        LogEntry cached = cache[slot];
+        if (cached != null && cached.sequence() == seq) return cached;
+
+        MappedByteBuffer[] mapped = regions;
+        if (mapped == null) return null;
+        int i = (int) seq;
+        long from = offsets[i];
+        int length = (int) Math.min(MAX_RECORD_BYTES, offsets[i + 1] - from);
+        byte[] bytes = new byte[length];
+        read(mapped, from, bytes, length);
+        LogEntry entry = parse(seq, levels[i], new String(bytes, StandardCharsets.UTF_8));
+        cache[slot] = entry;
+        return entry;
+    }
+
+    @Override
+    public int levelAt(long seq) {
+        return seq >= 0 && seq < count ? levels[(int) seq] : -1;
+    }
+
+    @Override
+    public int loggerIdAt(long seq) {
+        LogEntry entry = get(seq);
+        return entry != null ? entry.loggerId() : -1;
+    }
+
+    @Override
+    public int repeatCountAt(long seq) {
+        return seq >= 0 && seq < count ? 1 : 0;
+    }
+
+    @Override
+    public long forEachInRange(long fromSeq, int count, int levelMask, EntryConsumer consumer) {
+        long from = Math.max(0, fromSeq);
+        long to = Math.min(this.count, from + count);
+        for (long seq = from; seq < to; seq++) {
+            if ((levelMask & (1 << levels[(int) seq])) == 0) continue;
+            LogEntry entry = get(seq);
+            if (entry == null) return seq;
+            consumer.accept(seq, entry);
+        }
+        return Math.max(from, to);
+    }
+
+    @Override
+    public long firstSequence() {
+        return 0;
+    }
+
+    @Override
+    public long nextSequence() {
+        return count;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    private void load() {
+        try {
+            Path source = path;
+            if (phase == Phase.DECOMPRESSING) {
+                source = decompress();
+                if (source == null) return;
+                phase = Phase.INDEXING;
+                progress = 0f;
+            }
+            date = fileDate();
+            try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+                long size = channel.size();
+                MappedByteBuffer[] mapped = new MappedByteBuffer[(int) ((size + REGION_SIZE - 1) >>> REGION_BITS)];
+                for (int i = 0; i < mapped.length; i++) {
+                    long start = (long) i << REGION_BITS;
+                    mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, size - start));
+                }
+                if (closed) return;
+                regions = mapped;
+                index(mapped, size);
+            }
+            if (!closed) {
+                phase = Phase.READY;
+            }
+        } catch (IOException | RuntimeException e) {
+            error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            phase = Phase.FAILED;
+        } finally {
+            if (closed) {
+                deleteTemp();
+            }
+        }
+    }
+
+    private Path decompress() throws IOException {
+        temp = Files.createTempFile("log-viewer-", ".log");
+        temp.toFile().deleteOnExit();
+        try (FileChannel compressed = FileChannel.open(path, StandardOpenOption.READ);
+             InputStream in = new GZIPInputStream(Channels.newInputStream(compressed), SCAN_BYTES)) {
+            long size = Math.max(1, compressed.size());
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                byte[] chunk = new byte[SCAN_BYTES];
+                int read;
+                while ((read = in.read(chunk)) > 0) {
+                    if (closed) return null;
+                    out.write(ByteBuffer.wrap(chunk, 0, read));
+                    progress = (float) compressed.position() / size;
+                }
+            }
+        }
+        return temp;
+    }
+
+    private void index(MappedByteBuffer[] mapped, long size) {
+        byte[] chunk = new byte[SCAN_BYTES];
+        byte[] header = new byte[HEADER_BYTES];
+        long recordStart = -1;
+        int recordLevel = LogLevel.INFO.ordinal();
+        int lastTime = -1;
+        boolean lineStart = true;
+
+        for (long base = 0; base < size && !closed; base += SCAN_BYTES) {
+            int length = (int) Math.min(SCAN_BYTES, size - base);
+            read(mapped, base, chunk, length);
+            for (int i = 0; i < length; i++) {
+                if (lineStart) {
+                    long at = base + i;
+                    int headerLength = (int) Math.min(HEADER_BYTES, size - at);
+                    int level = chunk[i] == '[' ? headerLevel(mapped, at, header, headerLength) : -1;
+                    // Text before the first header still gets a record.
+                    if (level >= 0 || recordStart < 0) {
+                        if (recordStart >= 0) {
+                            publish(recordStart, at, recordLevel);
+                        }
+                        int time = level >= 0 ? timeOfDay(header, headerLength) : -1;
+                        if (time >= 0) {
+                            if (time < lastTime - ROLLOVER_SECONDS) {
+                                rollover(count);
+                            }
+                            lastTime = time;
+                        }
+                        recordStart = at;
+                        recordLevel = level >= 0 ? level : LogLevel.INFO.ordinal();
+                    }
+                }
+                lineStart = chunk[i] == '\n';
+            }
+            progress = (float) (base + length) / size;
+        }
+        if (recordStart >= 0 && !closed) {
+            publish(recordStart, size, recordLevel);
+        }
+        progress = 1f;
+    }
+
+    private void publish(long start, long end, int level) {
+        int n = count;
+        if (n + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            levels = Arrays.copyOf(levels, levels.length * 2);
+        }
+        offsets[n] = start;
+        offsets[n + 1] = end;
+        levels[n] = (byte) level;
+        count = n + 1;
+    }
+
+    private void rollover(int record) {
+        if (rolloverCount == rollovers.length) {
+            rollovers = Arrays.copyOf(rollovers, rolloverCount * 2);
+        }
+        rollovers[rolloverCount++] = record;
+    }
+
+    private int daysAfterFileDate(int record) {
+        int[] marks = rollovers;
+        int n = rolloverCount;
+        int days = 0;
+        while (days < n && marks[days] <= record) {
+            days++;
+        }
+        return days;
+    }
+
+    /**
+     * Seconds into the day of an undated "[12:34:56" header, or -1 if the
+     * header has a date or no time.
+     */
+    private static int timeOfDay(byte[] header, int length) {
+        if (length < 10 || header[3] != ':' || header[6] != ':' || (header[9] != ']' && header[9] != '.')) return -1;
+        int seconds = 0;
+        for (int i = 1; i < 9; i += 3) {
+            int high = header[i] - '0';
+            int low = header[i + 1] - '0';
+            if (high < 0 || high > 9 || low < 0 || low > 9) return -1;
+            seconds = seconds * 60 + high * 10 + low;
+        }
+        return seconds;
+    }
+
+    /**
+     * Level ordinal from a "[time] [thread/LEVEL]" header at {@code at}, or
+     * -1 if the line does not start with one.
+     */
+    private static int headerLevel(MappedByteBuffer[] mapped, long at, byte[] header, int length) {
+        read(mapped, at, header, length);
+        int close = indexOf(header, length, (byte) ']', 1);
+        if (close < 0 || close + 2 >= length || header[close + 1] != ' ' || header[close + 2] != '[') return -1;
+        int end = indexOf(header, length, (byte) ']', close + 3);
+        if (end < 0) return -1;
+        int slash = end - 1;
+        while (slash > close + 2 && header[slash] != '/') {
+            slash--;
+        }
+        if (header[slash] != '/') return -1;
+        return levelOf(new String(header, slash + 1, end - slash - 1, StandardCharsets.ISO_8859_1));
+    }
+
+    private static int indexOf(byte[] bytes, int length, byte value, int from) {
+        for (int i = from; i < length; i++) {
+            if (bytes[i] == value) return i;
+            if (bytes[i] == '\n') return -1;
+        }
+        return -1;
+    }
+
+    private static int levelOf(String name) {
+        return switch (name) {
+            case "FATAL" -> LogLevel.FATAL.ordinal();
+            case "ERROR" -> LogLevel.ERROR.ordinal();
+            case "WARN" -> LogLevel.WARN.ordinal();
+            case "INFO" -> LogLevel.INFO.ordinal();
+            case "DEBUG" -> LogLevel.DEBUG.ordinal();
+            case "TRACE" -> LogLevel.TRACE.ordinal();
+            default -> -1;
+        };
+    }
+
+    private static void read(MappedByteBuffer[] mapped, long from, byte[] dst, int length) {
+        int copied = 0;
+        while (copied < length) {
+            long at = from + copied;
+            MappedByteBuffer region = mapped[(int) (at >>> REGION_BITS)];
+            int offset = (int) (at & (REGION_SIZE - 1));
+            int n = Math.min(length - copied, region.limit() - offset);
+            region.get(offset, dst, copied, n);
+            copied += n;
+        }
+    }
+
+    /*
+     * Splits a record of the vanilla layouts:
+     *   [12:34:56] [Render thread/INFO]: message
+     *   [12:34:56] [main/INFO] (FabricLoader) message
+     *   [12Oct2024 12:34:56.789] [main/DEBUG] [net.minecraft.Foo/]: message
+     */
+    private LogEntry parse(long seq, byte level, String text) {
+        int end = text.length();
+        while (end > 0 && (text.charAt(end - 1) == '\n' || text.charAt(end - 1) == '\r')) {
+            end--;
+        }
+        String logger = "";
+        String thread = "";
+        LocalDate day = date.plusDays(daysAfterFileDate((int) seq));
+        long timestamp = day.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        int message = 0;
+
+        int close = text.indexOf(']');
+        int threadEnd = close > 0 ? text.indexOf(']', close + 1) : -1;
+        int slash = threadEnd > 0 ? text.lastIndexOf('/', threadEnd) : -1;
+        if (text.startsWith("[") && text.startsWith(" [", close + 1) && slash > close) {
+            timestamp = timestamp(text.substring(1, close), day, timestamp);
+            thread = text.substring(close + 3, slash);
+            message = threadEnd + 1;
+
+            if (text.startsWith(" (", message)) {
+                int loggerEnd = text.indexOf(')', message);
+                if (loggerEnd > 0) {
+                    logger = text.substring(message + 2, loggerEnd);
+                    message = loggerEnd + 1;
+                }
+            } else if (text.startsWith(" [", message)) {
+                int loggerEnd = text.indexOf("]:", message);
+                if (loggerEnd > 0) {
+                    int loggerSlash = text.indexOf('/', message);
+                    logger = text.substring(message + 2, loggerSlash > 0 && loggerSlash < loggerEnd ? loggerSlash : loggerEnd);
+                    message = loggerEnd + 1;
+                }
+            }
+            if (text.startsWith(": ", message)) {
+                message += 2;
+            } else if (text.startsWith(" ", message)) {
+                message++;
+            }
+        }
+
+        String body = text.substring(Math.min(message, end), end);
+        if (body.indexOf('\r') >= 0) {
+            body = body.replace("\r", "");
+        }
+        return new LogEntry(
+            seq,
+            timestamp,
+            level,
+            NameTable.LOGGERS.idOf(logger),
+            NameTable.THREADS.idOf(thread),
+            body
+        );
+    }
+
+    // "12:34:56", "12:34:56.789" or "12Oct2024 12:34:56.789".
+    private static long timestamp(String header, LocalDate day, long fallback) {
+        int space = header.lastIndexOf(' ');
+        String time = header.substring(space + 1);
+        if (space > 0) {
+            try {
+                day = LocalDate.parse(header.substring(0, space), HEADER_DATE);
+            } catch (DateTimeParseException e) {
+                // keep the day from the index pass
+            }
+        }
+        if (time.length() < 8 || time.charAt(2) != ':' || time.charAt(5) != ':') return fallback;
+        try {
+            long millis = Integer.parseInt(time, 0, 2, 10) * 3_600_000L
+                + Integer.parseInt(time, 3, 5, 10) * 60_000L
+                + Integer.parseInt(time, 6, 8, 10) * 1_000L;
+            if (time.length() >= 12 && time.charAt(8) == '.') {
+                millis += Integer.parseInt(time, 9, 12, 10);
+            }
+            return day.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli() + millis;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    // Rotated archives are named after their day; anything else is assumed
+    // to be from the day it was last written.
+    private LocalDate fileDate() throws IOException {
+        Matcher matcher = FILE_DATE.matcher(path.getFileName().toString());
+        if (matcher.find()) {
+            try {
+                return LocalDate.parse(matcher.group(1));
+            } catch (DateTimeParseException e) {
+                // fall through to the modification time
+            }
+        }
+        return LocalDate.ofInstant(Files.getLastModifiedTime(path).toInstant(), ZoneId.systemDefault());
+    }
+
+    private void deleteTemp() {
+        if (temp == null) return;
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException e) {
+            // removed on exit instead
+        }
+    }
+}
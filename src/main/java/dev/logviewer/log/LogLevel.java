@@ -0,0 +1,58 @@
+package dev.logviewer.log;
+
+import org.apache.logging.log4j.Level;
+
+public enum LogLevel {
+    FATAL(Level.FATAL),
+    ERROR(Level.ERROR),
+    WARN(Level.WARN),
+    INFO(Level.INFO),
+    DEBUG(Level.DEBUG),
+    TRACE(Level.TRACE);
+
+    public static final int ALL = (1 << 6) - 1;
+
+    private static final LogLevel[] VALUES = values();
+
+    private final Level level;
+
+    LogLevel(Level level) {
+        this.level = level;
+    }
+
+    public Level toLog4j() {
+        return level;
+    }
+
+    public int bit() {
+        return 1 << ordinal();
+    }
+
+    public static LogLevel byOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    // Custom log4j levels are folded into the nearest standard level.
+    public static LogLevel of(Level level) {
+        int value = level.intLevel();
+        if (value <= Level.FATAL.intLevel()) return FATAL;
+        if (value <= Level.ERROR.intLevel()) return ERROR;
+        if (value <= Level.WARN.intLevel()) return WARN;
+        if (value <= Level.INFO.intLevel()) return INFO;
+        if (value <= Level.DEBUG.intLevel()) return DEBUG;
+        return TRACE;
+    }
+
+    /**
+     * Level bits matching the four INFO/WARN/ERROR/DEBUG toggles of the
+     * viewer. FATAL and TRACE follow the INFO toggle.
+     */
+    public static int mask(boolean showInfo, boolean showWarn, boolean showError, boolean showDebug) {
+        int mask = 0;
+        if (showInfo) mask |= INFO.bit() | FATAL.bit() | TRACE.bit();
+        if (showWarn) mask |= WARN.bit();
+        if (showError) mask |= ERROR.bit();
+        if (showDebug) mask |= DEBUG.bit();
+        return mask;
+    }
+}
@@ -0,0 +1,601 @@
+package dev.logviewer.log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/*
+ * Search box queries, compiled once into a predicate tree. Terms separated by
+ * spaces must all match; OR (or |) between terms, a leading - to negate and
+ * parentheses work as usual. A term is either plain text, a "quoted phrase",
+ * a /regex/ (add i for case-insensitive), or a field:
+ *
+ *   level>=WARN  level<INFO  level=ERROR
+ *   logger:net.minecraft.server  thread:"Server thread"  msg:/tick \d+/
+ *   template:17
+ *
+ * Plain text and phrases match the message or the logger name, ignoring
+ * case. Within each AND/OR the cheap checks (level, logger and thread ids)
+ * run before text and regex checks. Compiled queries keep per-node scratch
+ * state, so each thread needs its own.
+ */
+public final class LogQuery {
+    private static final int MAX_CACHED_PATTERNS = 256;
+    private static final Map<String, Pattern> PATTERNS = new ConcurrentHashMap<>();
+
+    private static final LogQuery EMPTY = new LogQuery("", new And(new Node[0]), null);
+
+    private final String source;
+    private final Node root;
+    private final String error;
+    private final int levelMask;
+
+    private LogQuery(String source, Node root, String error) {
+        this.source = source;
+        this.root = root;
+        this.error = error;
+        this.levelMask = root.levelMask();
+    }
+
+    public static LogQuery compile(String text) {
+        if (text == null || text.isBlank()) {
+            return EMPTY;
+        }
+        Parser parser = new Parser(text);
+        Node root = parser.parse();
+        return new LogQuery(text, root, parser.error);
+    }
+
+    public String source() {
+        return source;
+    }
+
+    public boolean isEmpty() {
+        return root instanceof And and && and.children.length == 0;
+    }
+
+    /**
+     * Problem found while parsing, or null. The query still compiles; the
+     * offending term is treated as plain text.
+     */
+    public String error() {
+        return error;
+    }
+
+    /**
+     * Levels that can possibly match, as a {@link LogLevel#bit()} mask, so
+     * callers can skip entries without materializing them.
+     */
+    public int levelMask() {
+        return levelMask;
+    }
+
+    /**
+     * The longest text term every match must contain in its message or
+     * logger name, or null if there is none.
+     */
+    public String requiredText() {
+        String best = null;
+        Node[] terms = root instanceof And and ? and.children : new Node[] {root};
+        for (Node term : terms) {
+            if (term instanceof Text text
+                    && (best == null || text.needle.length() > best.length())) {
+                best = text.needle;
+            }
+        }
+        return best;
+    }
+
+    public boolean matches(LogEntry entry) {
+        return root.test(entry);
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    private enum Field {
+        ANY,
+        MESSAGE,
+        LOGGER,
+        THREAD
+    }
+
+    private abstract static class Node {
+        abstract boolean test(LogEntry entry);
+
+        abstract int cost();
+
+        int levelMask() {
+            return LogLevel.ALL;
+        }
+    }
+
+    private static final class And extends Node {
+        final Node[] children;
+
+        And(Node[] children) {
+            this.children = children;
+            Arrays.sort(children, Comparator.comparingInt(Node::cost));
+        }
+
+        @Override
+        boolean test(LogEntry entry) {
+            for (Node child : children) {
+                if (!child.test(entry)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        int cost() {
+            int cost = 0;
+            for (Node child : children) {
+                cost += child.cost();
+            }
+            return cost;
+        }
+
+        @Override
+        int levelMask() {
+            int mask = LogLevel.ALL;
+            for (Node child : children) {
+                mask &= child.levelMask();
+            }
+            return mask;
+        }
+    }
+
+    private static final class Or extends Node {
+        final Node[] children;
+
+        Or(Node[] children) {
+            this.children = children;
+            Arrays.sort(children, Comparator.comparingInt(Node::cost));
+        }
+
+        @Override
+        boolean test(LogEntry entry) {
+            for (Node child : children) {
+                if (child.test(entry)) return true;
+            }
+            return false;
+        }
+
+        @Override
+        int cost() {
+            int cost = 0;
+            for (Node child : children) {
+                cost += child.cost();
+            }
+            return cost;
+        }
+
+        @Override
+        int levelMask() {
+            int mask = 0;
+            for (Node child : children) {
+                mask |= child.levelMask();
+            }
+            return mask;
+        }
+    }
+
+    private static final class Not extends Node {
+        final Node child;
+
+        Not(Node child) {
+            this.child = child;
+        }
+
+        @Override
+        boolean test(LogEntry entry) {
+            return !child.test(entry);
+        }
+
+        @Override
+        int cost() {
+            return child.cost();
+        }
+
+        @Override
+        int levelMask() {
+            return child instanceof Level level ? LogLevel.ALL & ~level.mask : LogLevel.ALL;
+        }
+    }
+
+    private static final class Level extends Node {
+        final int mask;
+
+        Level(int mask) {
+            this.mask = mask;
+        }
+
+        @Override
+        boolean test(LogEntry entry) {
+            return (mask & (1 << entry.levelOrdinal())) != 0;
+        }
+
+        @Override
+        int cost() {
+            return 1;
+        }
+
+        @Override
+        int levelMask() {
+            return mask;
+        }
+    }
+
+    private static final class Template extends Node {
+        final int id;
+
+        Template(int id) {
+            this.id = id;
+        }
+
+        @Override
+        boolean test(LogEntry entry) {
+            return entry.templateId() == id;
+        }
+
+        @Override
+        int cost() {
+            return 1;
+        }
+    }
+
+    /*
+     * Matches against an interned name. The answer for each id is worked out
+     * once and remembered, so testing an entry is an array lookup.
+     */
+    private static final class Name extends Node {
+        private static final byte UNKNOWN = 0;
+        private static final byte MATCH = 1;
+        private static final byte MISMATCH = 2;
+
+        final NameTable table;
+        final Node predicate;
+        final Field field;
+        byte[] decisions = new byte[64];
+
+        Name(NameTable table, Field field, Node predicate) {
+            this.table = table;
+            this.field = field;
+            this.predicate = predicate;
+        }
+
+        @Override
+        boolean test(LogEntry entry) {
+            int id = field == Field.LOGGER ? entry.loggerId() : entry.threadId();
+            if (id < 0) return false;
+            if (id >= decisions.length) {
+                decisions = Arrays.copyOf(decisions, Math.max(decisions.length * 2, id + 1));
+            }
+            byte decision = decisions[id];
+            if (decision == UNKNOWN) {
+                String name = table.nameOf(id);
+                decision = name != null && matchesName(name) ? MATCH : MISMATCH;
+                decisions[id] = decision;
+            }
+            return decision == MATCH;
+        }
+
+        private boolean matchesName(String name) {
+            return predicate instanceof Text text
+                ? LogEntry.containsIgnoreCase(name, text.needle)
+                : ((Regex) predicate).find(name);
+        }
+
+        @Override
+        int cost() {
+            return 2;
+        }
+    }
+
+    private static final class Text extends Node {
+        final String needle;
+        final Field field;
+
+        Text(String needle, Field field) {
+            this.needle = needle;
+            this.field = field;
+        }
+
+        @Override
+        boolean test(LogEntry entry) {
+            if (LogEntry.containsIgnoreCase(entry.message(), needle)) return true;
+            return field == Field.ANY && LogEntry.containsIgnoreCase(entry.loggerName(), needle);
+        }
+
+        @Override
+        int cost() {
+            return 10;
+        }
+    }
+
+    private static final class Regex extends Node {
+        final Matcher matcher;
+        final Field field;
+
+        Regex(Pattern pattern, Field field) {
+            this.matcher = pattern.matcher("");
+            this.field = field;
+        }
+
+        @Override
+        boolean test(LogEntry entry) {
+            if (find(entry.message())) return true;
+            return field == Field.ANY && find(entry.loggerName());
+        }
+
+        boolean find(String text) {
+            return matcher.reset(text).find();
+        }
+
+        @Override
+        int cost() {
+            return 50;
+        }
+    }
+
+    private static Pattern pattern(String regex, boolean ignoreCase) {
+        String key = (ignoreCase ? "i/" : "/") + regex;
+        Pattern pattern = PATTERNS.get(key);
+        if (pattern == null) {
+            pattern = Pattern.compile(regex, ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0);
+            if (PATTERNS.size() >= MAX_CACHED_PATTERNS) {
+                PATTERNS.clear();
+            }
+            PATTERNS.put(key, pattern);
+        }
+        return pattern;
+    }
+
+    private static final class Parser {
+        private final String text;
+        private int pos = 0;
+        private int depth = 0;
+        String error;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Node parse() {
+            Node node = parseOr();
+            skipSpaces();
+            while (pos < text.length()) {
+                // A stray closing parenthesis; keep the rest as more terms.
+                fail("Unmatched ')'");
+                pos++;
+                node = new And(new Node[] {node, parseOr()});
+                skipSpaces();
+            }
+            return node;
+        }
+
+        private Node parseOr() {
+            List<Node> alternatives = new ArrayList<>();
+            alternatives.add(parseAnd());
+            while (acceptOperator()) {
+                alternatives.add(parseAnd());
+            }
+            return alternatives.size() == 1 ? alternatives.get(0) : new Or(alternatives.toArray(new Node[0]));
+        }
+
+        private Node parseAnd() {
+            List<Node> terms = new ArrayList<>();
+            while (true) {
+                skipSpaces();
+                if (pos >= text.length() || peekOperator() || text.charAt(pos) == ')') break;
+                terms.add(parseUnary());
+            }
+            return terms.size() == 1 ? terms.get(0) : new And(terms.toArray(new Node[0]));
+        }
+
+        private Node parseUnary() {
+            char c = text.charAt(pos);
+            if (c == '-' && pos + 1 < text.length() && !Character.isWhitespace(text.charAt(pos + 1))) {
+                pos++;
+                return new Not(parseUnary());
+            }
+            if (c == '(') {
+                pos++;
+                depth++;
+                Node inner = parseOr();
+                skipSpaces();
+                if (pos < text.length() && text.charAt(pos) == ')') {
+                    pos++;
+                } else {
+                    fail("Missing ')'");
+                }
+                depth--;
+                return inner;
+            }
+            return parseTerm();
+        }
+
+        private Node parseTerm() {
+            int start = pos;
+            if (regionMatchesWord("level")) {
+                pos += 5;
+                Node level = parseLevel();
+                if (level != null) return level;
+                pos = start;
+            }
+            if (regionMatchesWord("template:")) {
+                pos += 9;
+                String id = readWord();
+                try {
+                    return new Template(Integer.parseInt(id));
+                } catch (NumberFormatException e) {
+                    fail("Invalid template id '" + id + "'");
+                    pos = start;
+                }
+            }
+            for (Field field : new Field[] {Field.LOGGER, Field.THREAD, Field.MESSAGE}) {
+                String prefix = field == Field.MESSAGE ? "msg:" : field.name().toLowerCase(Locale.ROOT) + ":";
+                if (text.regionMatches(true, pos, prefix, 0, prefix.length())
+                        && pos + prefix.length() < text.length()
+                        && !Character.isWhitespace(text.charAt(pos + prefix.length()))) {
+                    pos += prefix.length();
+                    Node value = parseValue(field);
+                    if (field == Field.MESSAGE) return value;
+                    NameTable table = field == Field.LOGGER ? NameTable.LOGGERS : NameTable.THREADS;
+                    return new Name(table, field, value);
+                }
+            }
+            return parseValue(Field.ANY);
+        }
+
+        private Node parseLevel() {
+            int ordinalOp;
+            if (text.startsWith(">=", pos)) {
+                ordinalOp = 0;
+                pos += 2;
+            } else if (text.startsWith("<=", pos)) {
+                ordinalOp = 1;
+                pos += 2;
+            } else if (text.startsWith(">", pos)) {
+                ordinalOp = 2;
+                pos++;
+            } else if (text.startsWith("<", pos)) {
+                ordinalOp = 3;
+                pos++;
+            } else if (text.startsWith("=", pos) || text.startsWith(":", pos)) {
+                ordinalOp = 4;
+                pos++;
+            } else {
+                return null;
+            }
+
+            String name = readWord();
+            LogLevel level;
+            try {
+                level = LogLevel.valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                fail("Unknown level '" + name + "'");
+                return null;
+            }
+
+            // Lower ordinals are more severe, so level>=WARN means WARN or
+            // anything before it.
+            int mask = 0;
+            for (LogLevel candidate : LogLevel.values()) {
+                int cmp = Integer.compare(level.ordinal(), candidate.ordinal());
+                boolean include = switch (ordinalOp) {
+                    case 0 -> cmp >= 0;
+                    case 1 -> cmp <= 0;
+                    case 2 -> cmp > 0;
+                    case 3 -> cmp < 0;
+                    default -> cmp == 0;
+                };
+                if (include) {
+                    mask |= candidate.bit();
+                }
+            }
+            return new Level(mask);
+        }
+
+        private Node parseValue(Field field) {
+            char c = text.charAt(pos);
+            if (c == '"') {
+                pos++;
+                StringBuilder phrase = new StringBuilder();
+                while (pos < text.length() && text.charAt(pos) != '"') {
+                    char ch = text.charAt(pos++);
+                    if (ch == '\\' && pos < text.length()) {
+                        ch = text.charAt(pos++);
+                    }
+                    phrase.append(ch);
+                }
+                if (pos < text.length()) {
+                    pos++;
+                } else {
+                    fail("Missing closing '\"'");
+                }
+                return new Text(phrase.toString(), field);
+            }
+            if (c == '/' && text.indexOf('/', pos + 1) > pos + 1) {
+                int start = pos;
+                pos++;
+                StringBuilder regex = new StringBuilder();
+                while (pos < text.length() && text.charAt(pos) != '/') {
+                    char ch = text.charAt(pos++);
+                    if (ch == '\\' && pos < text.length() && text.charAt(pos) == '/') {
+                        ch = text.charAt(pos++);
+                    } else if (ch == '\\' && pos < text.length()) {
+                        regex.append(ch);
+                        ch = text.charAt(pos++);
+                    }
+                    regex.append(ch);
+                }
+                if (pos < text.length()) {
+                    pos++;
+                    boolean ignoreCase = pos < text.length() && text.charAt(pos) == 'i' && endsWordAt(pos + 1);
+                    if (ignoreCase) pos++;
+                    if (endsWordAt(pos)) {
+                        try {
+                            return new Regex(pattern(regex.toString(), ignoreCase), field);
+                        } catch (PatternSyntaxException e) {
+                            fail("Bad regex: " + e.getDescription());
+                        }
+                    }
+                }
+                pos = start;
+            }
+            return new Text(readWord(), field);
+        }
+
+        private String readWord() {
+            int start = pos;
+            while (pos < text.length() && !endsWordAt(pos)) {
+                pos++;
+            }
+            return text.substring(start, pos);
+        }
+
+        private boolean endsWordAt(int index) {
+            if (index >= text.length()) return true;
+            char c = text.charAt(index);
+            return Character.isWhitespace(c) || (depth > 0 && c == ')');
+        }
+
+        private boolean regionMatchesWord(String word) {
+            return text.regionMatches(true, pos, word, 0, word.length());
+        }
+
+        private boolean peekOperator() {
+            if (text.charAt(pos) == '|' && endsWordAt(pos + 1)) return true;
+            return text.startsWith("OR", pos) && endsWordAt(pos + 2);
+        }
+
+        private boolean acceptOperator() {
+            skipSpaces();
+            if (pos >= text.length() || !peekOperator()) return false;
+            pos += text.charAt(pos) == '|' ? 1 : 2;
+            return true;
+        }
+
+        private void skipSpaces() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private void fail(String message) {
+            if (error == null) {
+                error = message;
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package dev.logviewer.log;
+
+/*
+ * Something FilteredView can filter: a sequence-numbered run of entries that
+ * only grows at the end and may lose entries at the front. Implemented by
+ * the live LogBuffer and by LogFile.
+ */
+public interface LogSource {
+    LogEntry get(long seq);
+
+    /**
+     * Level ordinal of an entry, or -1 if {@code seq} is not readable.
+     */
+    int levelAt(long seq);
+
+    /**
+     * Logger id of an entry, or -1 if {@code seq} is not readable.
+     */
+    int loggerIdAt(long seq);
+
+    /**
+     * How many identical lines an entry stands for, or 0 if {@code seq} is
+     * not readable.
+     */
+    int repeatCountAt(long seq);
+
+    /**
+     * Visits up to {@code count} readable entries starting at
+     * {@code fromSeq} whose level bit is set in {@code levelMask}.
+     *
+     * @return the sequence after the last one examined
+     */
+    long forEachInRange(long fromSeq, int count, int levelMask, EntryConsumer consumer);
+
+    long firstSequence();
+
+    long nextSequence();
+
+    int size();
+
+    @FunctionalInterface
+    interface EntryConsumer {
+        void accept(long seq, LogEntry entry);
+    }
+}
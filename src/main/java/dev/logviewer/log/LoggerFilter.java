@@ -0,0 +1,75 @@
+package dev.logviewer.log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.logging.log4j.Level;
+
+/*
+ * Capture rules by logger name prefix, such as "com.noisy.mod" at WARN or
+ * "net.minecraft.client.sounds" OFF. Prefixes match whole dot-separated
+ * segments and are kept in a trie; the deepest rule along a name wins and
+ * "*" is the rule for names nothing else matches. The threshold a name ends
+ * up with is remembered, so after the first line from a logger a check is a
+ * map lookup and an int comparison.
+ */
+public final class LoggerFilter {
+    public static final String DEFAULT_RULE = "*";
+
+    private static final int UNSET = -1;
+
+    private final Node root = new Node();
+    private final ConcurrentHashMap<String, Integer> thresholds = new ConcurrentHashMap<>();
+
+    private LoggerFilter() {}
+
+    /**
+     * Builds a filter from prefix to minimum level, or returns null if there
+     * are no rules.
+     */
+    public static LoggerFilter compile(Map<String, Level> rules) {
+        if (rules.isEmpty()) return null;
+
+        LoggerFilter filter = new LoggerFilter();
+        rules.forEach((prefix, level) -> {
+            Node node = filter.root;
+            if (!prefix.equals(DEFAULT_RULE)) {
+                for (String segment : prefix.split("\\.")) {
+                    node = node.children.computeIfAbsent(segment, key -> new Node());
+                }
+            }
+            node.threshold = level.intLevel();
+        });
+        return filter;
+    }
+
+    public boolean accepts(String loggerName, Level level) {
+        Integer threshold = thresholds.get(loggerName);
+        if (threshold == null) {
+            threshold = thresholds.computeIfAbsent(loggerName, this::resolve);
+        }
+        // Lower log4j int levels are more severe.
+        return level.intLevel() <= threshold;
+    }
+
+    private int resolve(String loggerName) {
+        Node node = root;
+        int threshold = root.threshold != UNSET ? root.threshold : Level.ALL.intLevel();
+        int start = 0;
+        while (node != null && start <= loggerName.length()) {
+            int end = loggerName.indexOf('.', start);
+            if (end < 0) end = loggerName.length();
+            node = node.children.get(loggerName.substring(start, end));
+            if (node != null && node.threshold != UNSET) {
+                threshold = node.threshold;
+            }
+            start = end + 1;
+        }
+        return threshold;
+    }
+
+    private static final class Node {
+        final Map<String, Node> children = new HashMap<>();
+        int threshold = UNSET;
+    }
+}
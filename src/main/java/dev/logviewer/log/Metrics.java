@@ -0,0 +1,229 @@
+package dev.logviewer.log;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * What the viewer itself costs: counters and latency histograms for the
+ * capture path, the buffer, filtering and both renderers. Everything is a
+ * LongAdder, so recording from many logging threads does not contend.
+ * Histograms have fixed power-of-two buckets of nanoseconds; percentiles
+ * report the upper bound of their bucket, so they are at most 2x high.
+ *
+ * Timing costs two nanoTime() calls per measured call. start() returns 0
+ * while metrics are disabled and record() ignores a 0 start, so a disabled
+ * probe is one volatile read.
+ */
+public final class Metrics {
+    public static final Histogram APPEND = new Histogram("append");
+    public static final Histogram BUFFER_ADD = new Histogram("buffer.add");
+    public static final Histogram FILTER = new Histogram("filter");
+    public static final Histogram HUD_RENDER = new Histogram("hud.render");
+    public static final Histogram SCREEN_RENDER = new Histogram("screen.render");
+
+    /** Lines accepted for capture, after filters and rate limits. */
+    public static final LongAdder CAPTURED = new LongAdder();
+    /** Lines dropped by a capture filter. */
+    public static final LongAdder FILTERED_OUT = new LongAdder();
+    /** Times a producer had to wait: for a ring slot, or on a full queue. */
+    public static final LongAdder WAITS = new LongAdder();
+
+    private static volatile boolean enabled = true;
+
+    private static long rateSampledAt = System.nanoTime();
+    private static long rateSampledCount = 0;
+    private static double rate = 0;
+
+    private Metrics() {}
+
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start of a timed call, to be passed to {@link Histogram#record(long)}.
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Captured lines per second, averaged over at least the last second.
+     */
+    public static synchronized double captureRate() {
+        long now = System.nanoTime();
+        long elapsed = now - rateSampledAt;
+        if (elapsed >= 1_000_000_000L) {
+            long count = CAPTURED.sum();
+            rate = (count - rateSampledCount) * 1e9 / elapsed;
+            rateSampledCount = count;
+            rateSampledAt = now;
+        }
+        return rate;
+    }
+
+    /**
+     * One line for the HUD: capture rate, append latency, drops and render
+     * time.
+     */
+    public static String summaryLine() {
+        return String.format(
+            Locale.ROOT,
+            "%.0f/s append p99 %s drop %d hud p99 %s",
+            captureRate(),
+            formatNanos(APPEND.percentile(0.99)),
+            dropped(),
+            formatNanos(HUD_RENDER.percentile(0.99))
+        );
+    }
+
+    /**
+     * Every counter and histogram, one per line.
+     */
+    public static String dumpStats() {
+        StringBuilder out = new StringBuilder(1024);
+        out.append(String.format(Locale.ROOT, "captured %d (%.0f/s)%n", CAPTURED.sum(), captureRate()));
+        out.append(String.format(Locale.ROOT, "filtered out %d%n", FILTERED_OUT.sum()));
+        RateLimiter limiter = LogCapture.getRateLimiter();
+        out.append(String.format(Locale.ROOT, "rate limited %d%n", limiter != null ? limiter.suppressedCount() : 0));
+        AsyncIngest ingest = LogCapture.getIngest();
+        if (ingest != null) {
+            out.append(String.format(
+                Locale.ROOT,
+                "queue %d / %d, dropped %d, batches %d%n",
+                ingest.queuedCount(),
+                ingest.queueCapacity(),
+                ingest.droppedCount(),
+                ingest.batchCount()
+            ));
+        }
+        out.append(String.format(Locale.ROOT, "waits %d%n", WAITS.sum()));
+        for (Histogram histogram : new Histogram[] {APPEND, BUFFER_ADD, FILTER, HUD_RENDER, SCREEN_RENDER}) {
+            out.append(histogram).append(System.lineSeparator());
+        }
+        return out.toString();
+    }
+
+    public static void reset() {
+        APPEND.reset();
+        BUFFER_ADD.reset();
+        FILTER.reset();
+        HUD_RENDER.reset();
+        SCREEN_RENDER.reset();
+        CAPTURED.reset();
+        FILTERED_OUT.reset();
+        WAITS.reset();
+    }
+
+    private static long dropped() {
+        AsyncIngest ingest = LogCapture.getIngest();
+        RateLimiter limiter = LogCapture.getRateLimiter();
+        return (ingest != null ? ingest.droppedCount() : 0) + (limiter != null ? limiter.suppressedCount() : 0);
+    }
+
+    static String formatNanos(long nanos) {
+        if (nanos < 1_000) return nanos + "ns";
+        if (nanos < 1_000_000) return String.format(Locale.ROOT, "%.1fus", nanos / 1e3);
+        return String.format(Locale.ROOT, "%.1fms", nanos / 1e6);
+    }
+
+    public static final class Histogram {
+        // Bucket i counts durations below 2^i ns; the last one is unbounded.
+        private static final int BUCKETS = 40;
+
+        private final String name;
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        Histogram(String name) {
+            this.name = name;
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Records the time since {@code start}, a value from
+         * {@link Metrics#start()}.
+         */
+        public void record(long start) {
+            if (start == 0) return;
+            recordNanos(System.nanoTime() - start);
+        }
+
+        public void recordNanos(long nanos) {
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+            buckets[bucket].increment();
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public long meanNanos() {
+            long n = count.sum();
+            return n > 0 ? totalNanos.sum() / n : 0;
+        }
+
+        public long maxNanos() {
+            return maxNanos.get();
+        }
+
+        /**
+         * Upper bound of the bucket holding quantile {@code q}, capped at the
+         * largest value seen. 0 when nothing was recorded.
+         */
+        public long percentile(double q) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets[i].sum();
+                total += counts[i];
+            }
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(q * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(1L << i, maxNanos());
+                }
+            }
+            return maxNanos();
+        }
+
+        void reset() {
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                Locale.ROOT,
+                "%s: n=%d mean=%s p50=%s p99=%s p999=%s max=%s",
+                name,
+                count(),
+                formatNanos(meanNanos()),
+                formatNanos(percentile(0.5)),
+                formatNanos(percentile(0.99)),
+                formatNanos(percentile(0.999)),
+                formatNanos(maxNanos())
+            );
+        }
+    }
+}
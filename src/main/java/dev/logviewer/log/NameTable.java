@@ -0,0 +1,62 @@
+package dev.logviewer.log;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Append-only intern table for logger and thread names so buffer slots can
+ * store an int instead of a String reference. Names are never removed; the set
+ * of loggers and threads in a game session is small and stable.
+ */
+final class NameTable {
+    static final NameTable LOGGERS = new NameTable();
+    static final NameTable THREADS = new NameTable();
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[64];
+    private int size = 0;
+
+    int idOf(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : register(name);
+    }
+
+    String nameOf(int id) {
+        return names[id];
+    }
+
+    int size() {
+        return ids.size();
+    }
+
+    /**
+     * Flags, indexed by id, which names currently in the table contain
+     * {@code term} ignoring case.
+     */
+    boolean[] matching(String term) {
+        String[] current = names;
+        int count = Math.min(size(), current.length);
+        boolean[] result = new boolean[count];
+        for (int id = 0; id < count; id++) {
+            String name = current[id];
+            result[id] = name != null && LogEntry.containsIgnoreCase(name, term);
+        }
+        return result;
+    }
+
+    private synchronized int register(String name) {
+        Integer existing = ids.get(name);
+        if (existing != null) return existing;
+
+        int id = size;
+        String[] current = names;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[id] = name;
+        names = current;
+        size = id + 1;
+        ids.put(name, id);
+        return id;
+    }
+}
@@ -0,0 +1,121 @@
+package dev.logviewer.log;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Token buckets for LogCapture: one per logger name and an optional global
+ * one. Each bucket is kept as a GCRA "theoretical arrival time", so taking a
+ * token is a single CAS; a bucket holds up to one second's worth of lines.
+ * Lines over a limit are counted per logger and reported in batches through
+ * drainSummaries(), or, with sampling, one in every sampleEvery of them is
+ * let through anyway.
+ */
+public final class RateLimiter {
+    private static final long BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long SUMMARY_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final long loggerInterval;
+    private final long globalInterval;
+    private final int sampleEvery;
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong global = new AtomicLong(System.nanoTime());
+    private final AtomicLong nextSummary = new AtomicLong(System.nanoTime() + SUMMARY_INTERVAL_NANOS);
+    private final LongAdder suppressed = new LongAdder();
+
+    /**
+     * @param loggerLinesPerSecond limit for each logger, 0 for none
+     * @param globalLinesPerSecond limit across all loggers, 0 for none
+     * @param sampleEvery let one in this many over-limit lines through, 0 to
+     *     drop them all
+     */
+    public RateLimiter(int loggerLinesPerSecond, int globalLinesPerSecond, int sampleEvery) {
+        this.loggerInterval = loggerLinesPerSecond > 0 ? BURST_NANOS / loggerLinesPerSecond : 0;
+        this.globalInterval = globalLinesPerSecond > 0 ? BURST_NANOS / globalLinesPerSecond : 0;
+        this.sampleEvery = Math.max(0, sampleEvery);
+    }
+
+    public boolean isEnabled() {
+        return loggerInterval > 0 || globalInterval > 0;
+    }
+
+    /**
+     * Whether a line from {@code loggerName} may be captured now. Lines that
+     * may not are counted towards the next summary.
+     */
+    public boolean tryAcquire(String loggerName) {
+        long now = System.nanoTime();
+        Bucket bucket = buckets.get(loggerName);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(loggerName, name -> new Bucket(now));
+        }
+        // Global first, so a line it rejects does not use up its logger's
+        // token; a global token taken for a line its logger rejects is
+        // handed back.
+        if (globalInterval == 0 || take(global, globalInterval, now)) {
+            if (loggerInterval == 0 || take(bucket.arrival, loggerInterval, now)) {
+                return true;
+            }
+            if (globalInterval > 0) {
+                global.addAndGet(-globalInterval);
+            }
+        }
+        if (sampleEvery > 0 && bucket.overLimit.incrementAndGet() % sampleEvery == 0) {
+            return true;
+        }
+        bucket.suppressed.increment();
+        suppressed.increment();
+        return false;
+    }
+
+    /**
+     * Hands each logger's suppressed count since the last summary to
+     * {@code consumer}, at most once per summary interval. Loggers with
+     * nothing suppressed are skipped.
+     */
+    public void drainSummaries(SummaryConsumer consumer) {
+        long due = nextSummary.get();
+        long now = System.nanoTime();
+        if (now - due < 0 || !nextSummary.compareAndSet(due, now + SUMMARY_INTERVAL_NANOS)) return;
+
+        buckets.forEach((loggerName, bucket) -> {
+            long count = bucket.suppressed.sumThenReset();
+            if (count > 0) {
+                consumer.accept(loggerName, count);
+            }
+        });
+    }
+
+    /**
+     * Lines suppressed since startup, not counting sampled ones.
+     */
+    public long suppressedCount() {
+        return suppressed.sum();
+    }
+
+    private static boolean take(AtomicLong arrival, long interval, long now) {
+        while (true) {
+            long current = arrival.get();
+            long next = Math.max(current, now) + interval;
+            if (next - now > BURST_NANOS) return false;
+            if (arrival.compareAndSet(current, next)) return true;
+        }
+    }
+
+    @FunctionalInterface
+    public interface SummaryConsumer {
+        void accept(String loggerName, long suppressed);
+    }
+
+    private static final class Bucket {
+        final AtomicLong arrival;
+        final AtomicLong overLimit = new AtomicLong();
+        final LongAdder suppressed = new LongAdder();
+
+        Bucket(long now) {
+            this.arrival = new AtomicLong(now);
+        }
+    }
+}
@@ -0,0 +1,662 @@
+package dev.logviewer.log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Keeps lines evicted from the LogBuffer in append-only segment files so the
+ * viewer can scroll back past the in-memory window. Evicted entries are
+ * queued and a single writer thread encodes them:
+ *
+ *   varlong seq delta, zigzag varlong timestamp delta, byte level,
+ *   varint logger id, varint thread id, varint template id + 1,
+ *   varint stack id + 1, varint repeats - 1
+ *   [, varlong last timestamp - timestamp],
+ *   varint (length << 1 | lazy flag), message
+ *
+ * A formatted message is stored as UTF-8. A lazy one is stored unformatted,
+ * as its pattern (varint length + UTF-8), a varint parameter count and one
+ * tagged value per parameter, so lines that are evicted without ever being
+ * shown are not formatted on the way to disk either. Boxed primitives keep
+ * their type; other immutable parameters are stored as their toString(),
+ * which formats to the same text.
+ *
+ * Deltas are against the previous record; the first record of a segment
+ * is its own base. Every INDEX_INTERVAL-th record goes into the segment's
+ * sparse index with its offset and the sequence and timestamp its deltas
+ * are against, so decoding can begin there. A sealed segment ends with
+ * that index, its entry count and a magic number. Reads go through a read-only
+ * memory mapping of the flushed part of each segment.
+ *
+ * Logger and thread ids refer to this session's name tables and stack ids
+ * to its interned throwables, so segments are only meaningful to the
+ * session that wrote them; leftovers from a previous session are deleted on
+ * startup. A stack that was never interned has no id and is not kept. The
+ * oldest segments are deleted once the store outgrows its byte budget.
+ * Entries the writer cannot store, because the queue was full, the disk
+ * failed or they arrived behind a later sequence, are counted as dropped.
+ */
+public final class SpillStore {
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    private static volatile SpillStore instance;
+
+    private static final long SEGMENT_BYTES = 16L * 1024 * 1024;
+    private static final int INDEX_INTERVAL = 64;
+    private static final long FOOTER_MAGIC = 0x4C56494E44455831L;
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".bin";
+    private static final int BATCH_SIZE = 512;
+    private static final int CACHE_SIZE = 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final byte PARAM_NULL = 0;
+    private static final byte PARAM_STRING = 1;
+    private static final byte PARAM_INT = 2;
+    private static final byte PARAM_LONG = 3;
+    private static final byte PARAM_DOUBLE = 4;
+    private static final byte PARAM_FLOAT = 5;
+    private static final byte PARAM_BOOLEAN = 6;
+    private static final byte PARAM_CHAR = 7;
+    private static final byte PARAM_SHORT = 8;
+    private static final byte PARAM_BYTE = 9;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final IngestQueue<LogEntry> queue = new IngestQueue<>(16384);
+    private final Thread writer;
+    private final LongAdder dropped = new LongAdder();
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final LogEntry[] cache = new LogEntry[CACHE_SIZE];
+    private volatile long nextSequence = 0;
+    private volatile boolean running = true;
+
+    // Writer state, guarded by this.
+    private final ByteBuffer out = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    private ByteBuffer scratch = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+    private final LogEntry[] batch = new LogEntry[BATCH_SIZE];
+    private Segment active;
+    private FileChannel channel;
+    private long written = -1;
+    private long previousSeq;
+    private long previousTimestamp;
+    private long pendingLastSeq;
+
+    private SpillStore(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+        this.writer = new Thread(this::writeLoop, "LogViewer-Spill");
+        this.writer.setDaemon(true);
+    }
+
+    public static SpillStore getInstance() {
+        return instance;
+    }
+
+    /**
+     * Opens a store in {@code directory}, deleting segments a previous session
+     * left behind, and starts its writer thread.
+     */
+    public static SpillStore open(Path directory, long maxBytes) throws IOException {
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path path : stale) {
+                Files.deleteIfExists(path);
+            }
+        }
+        SpillStore store = new SpillStore(directory, maxBytes);
+        store.writer.start();
+        instance = store;
+        return store;
+    }
+
+    /**
+     * Queues an evicted entry; suitable as a LogBuffer eviction listener.
+     * Never blocks: when the writer falls behind, the entry is dropped.
+     */
+    public void spill(long seq, LogEntry entry) {
+        if (!running || !queue.offer(entry)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Stops the writer once it has written what is queued, and seals the
+     * active segment. Entries spilled afterwards are dropped.
+     */
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            closeActive(true);
+        }
+    }
+
+    /**
+     * Oldest sequence still on disk, or {@link #nextSequence()} when empty.
+     */
+    public long firstSequence() {
+        List<Segment> current = segments;
+        return current.isEmpty() ? nextSequence : current.get(0).firstSeq;
+    }
+
+    /**
+     * Sequence after the last entry the writer has dealt with. Everything
+     * below it is either readable or was dropped.
+     */
+    public long nextSequence() {
+        return nextSequence;
+    }
+
+    public LogEntry get(long seq) {
+        int slot = (int) (seq & (CACHE_SIZE - 1));
+        LogEntry cached = cache[slot];
+        if (cached != null && cached.sequence() == seq) {
+            return cached;
+        }
+        LogEntry[] found = new LogEntry[1];
+        forEachInRange(seq, 1, (s, entry) -> {
+            if (s == seq) found[0] = entry;
+        });
+        return found[0];
+    }
+
+    /**
+     * Decodes the stored entries in [fromSeq, fromSeq + count) in order.
+     *
+     * @return the sequence after the last one examined
+     */
+    public long forEachInRange(long fromSeq, int count, LogSource.EntryConsumer consumer) {
+        long end = fromSeq + count;
+        long seq = fromSeq;
+        for (Segment segment : segments) {
+            if (seq >= end) break;
+            if (segment.lastSeq < seq) continue;
+            seq = segment.read(seq, end, consumer, cache);
+        }
+        return Math.max(seq, Math.min(end, nextSequence));
+    }
+
+    public void clear() {
+        synchronized (this) {
+            while (queue.poll() != null) {
+                // discard what has not been written yet
+            }
+            closeActive(false);
+            for (Segment segment : segments) {
+                segment.delete();
+            }
+            segments.clear();
+            Arrays.fill(cache, null);
+        }
+    }
+
+    public long diskBytes() {
+        long total = 0;
+        for (Segment segment : segments) {
+            total += segment.size;
+        }
+        return total;
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    private void writeLoop() {
+        while (running) {
+            if (writeBatch() == 0) {
+                flushQuietly();
+                if (queue.size() == 0 && running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+            }
+        }
+        while (writeBatch() > 0) {
+            // write whatever was queued before close
+        }
+    }
+
+    private int writeBatch() {
+        int count = 0;
+        LogEntry entry;
+        while (count < BATCH_SIZE && (entry = queue.poll()) != null) {
+            batch[count++] = entry;
+        }
+        if (count == 0) return 0;
+
+        // Concurrent evictions can be queued slightly out of order.
+        Arrays.sort(batch, 0, count, (a, b) -> Long.compare(a.sequence(), b.sequence()));
+        synchronized (this) {
+            int i = 0;
+            try {
+                for (; i < count; i++) {
+                    // Behind a later sequence already on disk; records in a
+                    // segment must stay in order.
+                    if (batch[i].sequence() <= written) {
+                        dropped.increment();
+                        continue;
+                    }
+                    write(batch[i]);
+                }
+            } catch (IOException e) {
+                // A full disk should not take logging down with it; start
+                // over with a fresh segment next time. The entry that failed
+                // and the rest of the batch are lost.
+                dropped.add(count - i);
+                closeActive(false);
+            }
+        }
+        Arrays.fill(batch, 0, count, null);
+        return count;
+    }
+
+    private void write(LogEntry entry) throws IOException {
+        long seq = entry.sequence();
+        if (active == null) {
+            Path path = directory.resolve(String.format("%s%016x%s", PREFIX, seq, SUFFIX));
+            channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+            );
+            active = new Segment(path, seq);
+            segments.add(active);
+            previousSeq = seq;
+            previousTimestamp = entry.timestamp();
+        }
+
+        if (active.recordCount % INDEX_INTERVAL == 0) {
+            active.addIndex(previousSeq, previousTimestamp, active.size + out.position());
+        }
+
+        Object raw = entry.rawMessage();
+        boolean lazy = LazyMessage.parameters(raw) != null;
+        ByteBuffer message = encodeMessage(raw);
+        int length = message.remaining();
+        if (out.remaining() < 64 + length) {
+            flush();
+        }
+        putVarLong(out, seq - previousSeq);
+        putVarLong(out, zigzag(entry.timestamp() - previousTimestamp));
+        out.put(entry.levelOrdinal());
+        putVarLong(out, entry.loggerId());
+        putVarLong(out, entry.threadId());
+        putVarLong(out, entry.templateId() + 1);
+        putVarLong(out, entry.thrown() != null ? entry.thrown().id() + 1 : 0);
+        putVarLong(out, entry.repeatCount() - 1);
+        if (entry.repeatCount() > 1) {
+            putVarLong(out, entry.lastTimestamp() - entry.timestamp());
+        }
+        putVarLong(out, ((long) length << 1) | (lazy ? 1 : 0));
+        boolean large = length > out.remaining();
+        if (large) {
+            flush();
+            while (message.hasRemaining()) {
+                channel.write(message);
+            }
+        } else {
+            out.put(message);
+        }
+
+        previousSeq = seq;
+        previousTimestamp = entry.timestamp();
+        active.recordCount++;
+        pendingLastSeq = seq;
+        written = seq;
+        if (large) {
+            active.published(channel.position(), seq);
+        }
+
+        if (active.size + out.position() >= SEGMENT_BYTES) {
+            closeActive(true);
+            enforceBudget();
+        }
+    }
+
+    private ByteBuffer encodeMessage(Object message) {
+        Object[] parameters = LazyMessage.parameters(message);
+        if (parameters == null) {
+            return ByteBuffer.wrap(((String) message).getBytes(StandardCharsets.UTF_8));
+        }
+        scratch.clear();
+        putString(LazyMessage.pattern(message));
+        reserve(10);
+        putVarLong(scratch, parameters.length);
+        for (Object parameter : parameters) {
+            reserve(16);
+            switch (parameter) {
+                case null -> scratch.put(PARAM_NULL);
+                case Integer value -> {
+                    scratch.put(PARAM_INT);
+                    putVarLong(scratch, zigzag(value));
+                }
+                case Long value -> {
+                    scratch.put(PARAM_LONG);
+                    putVarLong(scratch, zigzag(value));
+                }
+                case Double value -> scratch.put(PARAM_DOUBLE).putDouble(value);
+                case Float value -> scratch.put(PARAM_FLOAT).putFloat(value);
+                case Boolean value -> scratch.put(PARAM_BOOLEAN).put((byte) (value ? 1 : 0));
+                case Character value -> {
+                    scratch.put(PARAM_CHAR);
+                    putVarLong(scratch, value);
+                }
+                case Short value -> {
+                    scratch.put(PARAM_SHORT);
+                    putVarLong(scratch, zigzag(value));
+                }
+                case Byte value -> scratch.put(PARAM_BYTE).put(value);
+                default -> {
+                    scratch.put(PARAM_STRING);
+                    putString(parameter.toString());
+                }
+            }
+        }
+        return scratch.flip();
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        reserve(10 + bytes.length);
+        putVarLong(scratch, bytes.length);
+        scratch.put(bytes);
+    }
+
+    private void reserve(int bytes) {
+        if (scratch.remaining() < bytes) {
+            int size = Math.max(scratch.capacity() * 2, scratch.position() + bytes);
+            ByteBuffer grown = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+            scratch.flip();
+            grown.put(scratch);
+            scratch = grown;
+        }
+    }
+
+    private static Object decodeMessage(ByteBuffer buffer, int length, boolean lazy) {
+        int end = buffer.position() + length;
+        if (!lazy) {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        String format = getString(buffer);
+        Object[] parameters = new Object[(int) getVarLong(buffer)];
+        for (int i = 0; i < parameters.length; i++) {
+            byte tag = buffer.get();
+            parameters[i] = switch (tag) {
+                case PARAM_STRING -> getString(buffer);
+                case PARAM_INT -> (int) unzigzag(getVarLong(buffer));
+                case PARAM_LONG -> unzigzag(getVarLong(buffer));
+                case PARAM_DOUBLE -> buffer.getDouble();
+                case PARAM_FLOAT -> buffer.getFloat();
+                case PARAM_BOOLEAN -> buffer.get() != 0;
+                case PARAM_CHAR -> (char) getVarLong(buffer);
+                case PARAM_SHORT -> (short) unzigzag(getVarLong(buffer));
+                case PARAM_BYTE -> buffer.get();
+                default -> null;
+            };
+        }
+        buffer.position(end);
+        return LazyMessage.restore(format, parameters);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[(int) getVarLong(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void flushQuietly() {
+        synchronized (this) {
+            try {
+                flush();
+            } catch (IOException e) {
+                closeActive(false);
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        if (active != null && out.position() > 0) {
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            out.clear();
+            active.published(channel.position(), pendingLastSeq);
+        }
+        if (written >= nextSequence) {
+            nextSequence = written + 1;
+        }
+    }
+
+    // Writes the footer when sealing; otherwise just abandons the segment
+    // as it is on disk.
+    private void closeActive(boolean seal) {
+        if (active == null) return;
+        try {
+            flush();
+            if (seal) {
+                active.writeFooter(channel);
+            }
+        } catch (IOException e) {
+            // the records flushed so far stay readable
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing left to do with it
+        }
+        out.clear();
+        active = null;
+        channel = null;
+    }
+
+    private void enforceBudget() {
+        long total = diskBytes();
+        while (total > maxBytes && segments.size() > 1) {
+            Segment oldest = segments.remove(0);
+            total -= oldest.size;
+            oldest.delete();
+        }
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Segment {
+        final Path path;
+        final long firstSeq;
+        volatile long lastSeq;
+        volatile long size = 0;
+        long recordCount = 0;
+
+        private long[] indexSeqs = new long[64];
+        private long[] indexTimestamps = new long[64];
+        private long[] indexOffsets = new long[64];
+        private int indexCount = 0;
+
+        private MappedByteBuffer mapped;
+        private long mappedSize = 0;
+        private boolean deleted = false;
+
+        Segment(Path path, long firstSeq) {
+            this.path = path;
+            this.firstSeq = firstSeq;
+            this.lastSeq = firstSeq - 1;
+        }
+
+        synchronized void addIndex(long seq, long timestamp, long offset) {
+            if (indexCount == indexSeqs.length) {
+                int grown = indexCount * 2;
+                indexSeqs = Arrays.copyOf(indexSeqs, grown);
+                indexTimestamps = Arrays.copyOf(indexTimestamps, grown);
+                indexOffsets = Arrays.copyOf(indexOffsets, grown);
+            }
+            indexSeqs[indexCount] = seq;
+            indexTimestamps[indexCount] = timestamp;
+            indexOffsets[indexCount] = offset;
+            indexCount++;
+        }
+
+        synchronized void published(long size, long lastSeq) {
+            this.size = size;
+            this.lastSeq = lastSeq;
+        }
+
+        synchronized void writeFooter(FileChannel channel) throws IOException {
+            ByteBuffer footer = ByteBuffer.allocate(indexCount * 24 + 12).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < indexCount; i++) {
+                footer.putLong(indexSeqs[i]);
+                footer.putLong(indexTimestamps[i]);
+                footer.putLong(indexOffsets[i]);
+            }
+            footer.putInt(indexCount);
+            footer.putLong(FOOTER_MAGIC);
+            footer.flip();
+            while (footer.hasRemaining()) {
+                channel.write(footer);
+            }
+        }
+
+        synchronized void delete() {
+            deleted = true;
+            mapped = null;
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                // still mapped somewhere on some platforms
+                path.toFile().deleteOnExit();
+            }
+        }
+
+        /**
+         * Decodes records in [from, end) of this segment.
+         *
+         * @return the sequence to continue from in the next segment
+         */
+        long read(long from, long end, LogSource.EntryConsumer consumer, LogEntry[] cache) {
+            ByteBuffer buffer;
+            long limit;
+            long seq;
+            long timestamp;
+            long last;
+            synchronized (this) {
+                limit = size;
+                if (deleted || limit == 0) return from;
+                int point = indexCount - 1;
+                // An index entry holds the base of its record, which is the
+                // record before it, so only a base below from is safe.
+                while (point > 0 && (indexSeqs[point] >= from || indexOffsets[point] >= limit)) {
+                    point--;
+                }
+                buffer = map(limit);
+                if (buffer == null) return from;
+                buffer.position((int) indexOffsets[point]);
+                seq = indexSeqs[point];
+                timestamp = indexTimestamps[point];
+                last = lastSeq;
+            }
+
+            while (buffer.position() < limit) {
+                seq += getVarLong(buffer);
+                timestamp += unzigzag(getVarLong(buffer));
+                byte level = buffer.get();
+                int loggerId = (int) getVarLong(buffer);
+                int threadId = (int) getVarLong(buffer);
+                int templateId = (int) getVarLong(buffer) - 1;
+                int stackId = (int) getVarLong(buffer) - 1;
+                int repeats = (int) getVarLong(buffer) + 1;
+                long lastTimestamp = repeats > 1 ? timestamp + getVarLong(buffer) : timestamp;
+                long header = getVarLong(buffer);
+                int length = (int) (header >>> 1);
+                if (seq >= end) return end;
+                if (seq < from) {
+                    buffer.position(buffer.position() + length);
+                    continue;
+                }
+
+                Object message = decodeMessage(buffer, length, (header & 1) != 0);
+                LogEntry entry = new LogEntry(
+                    seq,
+                    timestamp,
+                    level,
+                    loggerId,
+                    threadId,
+                    message,
+                    repeats,
+                    lastTimestamp,
+                    templateId,
+                    ThrowableSnapshot.byId(stackId)
+                );
+                cache[(int) (seq & (cache.length - 1))] = entry;
+                consumer.accept(seq, entry);
+                if (seq >= last) break;
+            }
+            return Math.max(from, last + 1);
+        }
+
+        private ByteBuffer map(long limit) {
+            if (mapped == null || mappedSize < limit) {
+                try (FileChannel reader = FileChannel.open(path, StandardOpenOption.READ)) {
+                    mapped = reader.map(FileChannel.MapMode.READ_ONLY, 0, limit);
+                    mappedSize = limit;
+                } catch (IOException e) {
+                    return null;
+                }
+            }
+            return mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+}
@@ -0,0 +1,249 @@
+package dev.logviewer.log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Online message template mining in the style of Drain. A message is split
+ * into whitespace-separated tokens and routed down a fixed-depth tree: first
+ * by token count, then by each of its first DEPTH tokens, with tokens that
+ * contain digits sharing one wildcard child. The leaf holds the templates
+ * seen along that path. A message joins the template with the most equal
+ * positions if at least SIMILARITY of them are, which turns the positions
+ * that differ into wildcards; otherwise it starts a new template.
+ *
+ * Lazy messages are mined by their format pattern, so parameters are never
+ * formatted and every "{}" already reads as a wildcard. Only the first line
+ * of a message counts. Only the AsyncIngest thread assigns templates, so the
+ * lock is only ever shared with the viewer reading the table; with
+ * synchronous capture there is no miner at all.
+ */
+public final class TemplateMiner {
+    public static final int NONE = -1;
+
+    private static final int DEPTH = 2;
+    private static final int MAX_TOKENS = 48;
+    private static final int MAX_CHILDREN = 64;
+    private static final int MAX_TEMPLATES_PER_LEAF = 32;
+    private static final int MAX_TEMPLATES = 4096;
+    private static final double SIMILARITY = 0.5;
+    private static final double RATE_WINDOW_MILLIS = 10_000;
+    private static final String WILDCARD = "<*>";
+
+    private static volatile TemplateMiner instance;
+
+    private final Map<Integer, Node> byLength = new HashMap<>();
+    private Template[] templates = new Template[256];
+    private int templateCount = 0;
+
+    private final int[] starts = new int[MAX_TOKENS];
+    private final int[] ends = new int[MAX_TOKENS];
+
+    public static TemplateMiner getInstance() {
+        return instance;
+    }
+
+    public static void configure() {
+        instance = new TemplateMiner();
+    }
+
+    /**
+     * Finds or creates the template of {@code entry} and counts it.
+     *
+     * @return the template id, or {@link #NONE} once the table is full
+     */
+    public synchronized int assign(LogEntry entry) {
+        String text = LazyMessage.pattern(entry.rawMessage());
+        int tokens = tokenize(text);
+        int length = tokens == MAX_TOKENS ? countTokens(text) : tokens;
+
+        Node node = byLength.computeIfAbsent(length, key -> new Node());
+        for (int i = 0; i < Math.min(DEPTH, tokens); i++) {
+            node = node.child(routingKey(text, i));
+        }
+
+        Template best = null;
+        int bestScore = -1;
+        for (Template template : node.templates) {
+            int score = template.score(text, starts, ends, tokens);
+            if (score > bestScore) {
+                best = template;
+                bestScore = score;
+            }
+        }
+
+        Template template;
+        if (best != null && bestScore >= SIMILARITY * tokens) {
+            template = best;
+            template.merge(text, starts, ends, tokens);
+        } else if (templateCount < MAX_TEMPLATES && node.templates.size() < MAX_TEMPLATES_PER_LEAF) {
+            template = new Template(templateCount, text, starts, ends, tokens, tokens < length);
+            if (templateCount == templates.length) {
+                templates = Arrays.copyOf(templates, templates.length * 2);
+            }
+            templates[templateCount++] = template;
+            node.templates.add(template);
+        } else {
+            return NONE;
+        }
+        template.count(entry.timestamp());
+        return template.id;
+    }
+
+    /**
+     * Text of a template with "<*>" for its variable parts, or null for an
+     * unknown id.
+     */
+    public synchronized String describe(int id) {
+        return id >= 0 && id < templateCount ? templates[id].text() : null;
+    }
+
+    /**
+     * Every template, most frequent first. Rates are lines per second,
+     * averaged over roughly the last ten seconds up to {@code now}.
+     */
+    public synchronized List<Stats> snapshot(long now) {
+        List<Stats> result = new ArrayList<>(templateCount);
+        for (int i = 0; i < templateCount; i++) {
+            Template template = templates[i];
+            result.add(new Stats(template.id, template.text(), template.count, template.rate(now)));
+        }
+        result.sort(Comparator.comparingLong(Stats::count).reversed());
+        return result;
+    }
+
+    public synchronized void clear() {
+        byLength.clear();
+        Arrays.fill(templates, 0, templateCount, null);
+        templateCount = 0;
+    }
+
+    public record Stats(int id, String template, long count, double ratePerSecond) {}
+
+    // Records where the first MAX_TOKENS tokens of the first line are.
+    private int tokenize(String text) {
+        int count = 0;
+        int length = text.length();
+        int i = 0;
+        while (count < MAX_TOKENS) {
+            while (i < length && text.charAt(i) <= ' ' && text.charAt(i) != '\n') {
+                i++;
+            }
+            if (i >= length || text.charAt(i) == '\n') break;
+            starts[count] = i;
+            while (i < length && text.charAt(i) > ' ') {
+                i++;
+            }
+            ends[count++] = i;
+        }
+        return count;
+    }
+
+    private static int countTokens(String text) {
+        int count = 0;
+        boolean inToken = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n') break;
+            boolean token = c > ' ';
+            if (token && !inToken) count++;
+            inToken = token;
+        }
+        return count;
+    }
+
+    private String routingKey(String text, int token) {
+        return isVariable(text, starts[token], ends[token])
+            ? WILDCARD
+            : text.substring(starts[token], ends[token]);
+    }
+
+    private static boolean isVariable(String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') return true;
+            if (c == '{' && i + 1 < end && text.charAt(i + 1) == '}') return true;
+        }
+        return false;
+    }
+
+    private static final class Node {
+        final Map<String, Node> children = new HashMap<>();
+        final List<Template> templates = new ArrayList<>(1);
+
+        Node child(String key) {
+            Node child = children.get(key);
+            if (child == null) {
+                // Past MAX_CHILDREN, new tokens share the wildcard branch.
+                String slot = children.size() < MAX_CHILDREN ? key : WILDCARD;
+                child = children.computeIfAbsent(slot, unused -> new Node());
+            }
+            return child;
+        }
+    }
+
+    private static final class Template {
+        final int id;
+        final String[] tokens;
+        final boolean truncated;
+        long count = 0;
+        double rate = 0;
+        long lastTimestamp;
+
+        Template(int id, String text, int[] starts, int[] ends, int length, boolean truncated) {
+            this.id = id;
+            this.tokens = new String[length];
+            this.truncated = truncated;
+            for (int i = 0; i < length; i++) {
+                tokens[i] = isVariable(text, starts[i], ends[i]) ? WILDCARD : text.substring(starts[i], ends[i]);
+            }
+        }
+
+        // Positions where the message has exactly the template's token.
+        int score(String text, int[] starts, int[] ends, int length) {
+            int score = 0;
+            for (int i = 0; i < length; i++) {
+                if (equalsToken(tokens[i], text, starts[i], ends[i])) {
+                    score++;
+                }
+            }
+            return score;
+        }
+
+        void merge(String text, int[] starts, int[] ends, int length) {
+            for (int i = 0; i < length; i++) {
+                if (tokens[i] != WILDCARD && !equalsToken(tokens[i], text, starts[i], ends[i])) {
+                    tokens[i] = WILDCARD;
+                }
+            }
+        }
+
+        private static boolean equalsToken(String token, String text, int start, int end) {
+            return token.length() == end - start && text.regionMatches(start, token, 0, token.length());
+        }
+
+        // Exponentially decaying average, so a template that stops being
+        // logged fades out instead of keeping its peak rate.
+        void count(long timestamp) {
+            if (count > 0) {
+                rate *= Math.exp(-Math.max(0, timestamp - lastTimestamp) / RATE_WINDOW_MILLIS);
+            }
+            rate += 1000 / RATE_WINDOW_MILLIS;
+            lastTimestamp = Math.max(lastTimestamp, timestamp);
+            count++;
+        }
+
+        double rate(long now) {
+            return rate * Math.exp(-Math.max(0, now - lastTimestamp) / RATE_WINDOW_MILLIS);
+        }
+
+        String text() {
+            String text = String.join(" ", tokens);
+            return truncated ? text + " ..." : text;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package dev.logviewer.log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Immutable copy of a logged throwable: class name, message, stack frames
+ * and cause chain. Throwables are mutable and may be reused once the logging
+ * call returns, so they are copied on the logging thread.
+ *
+ * Snapshots are interned. Identical frame arrays are shared through one
+ * table and identical snapshots (same class, message, frames and cause)
+ * through another, so a repeating error costs one stack no matter how often
+ * it is logged. An interned snapshot also gets an id, which is how spilled
+ * entries refer to it. Past MAX_INTERNED the tables stop growing and new
+ * stacks are kept unshared and without an id. The printable lines are built
+ * only when someone asks for them.
+ */
+public final class ThrowableSnapshot {
+    public static final int NONE = -1;
+
+    private static final int MAX_INTERNED = 4096;
+    private static final int MAX_CAUSES = 16;
+
+    private static final ConcurrentHashMap<Frames, StackTraceElement[]> FRAMES = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<ThrowableSnapshot, ThrowableSnapshot> INTERNED = new ConcurrentHashMap<>();
+    private static volatile ThrowableSnapshot[] byId = new ThrowableSnapshot[64];
+    private static int idCount = 0;
+
+    private final String className;
+    private final String message;
+    private final StackTraceElement[] frames;
+    private final ThrowableSnapshot cause;
+    private final int hash;
+    private int id = NONE;
+    private volatile List<String> lines;
+
+    private ThrowableSnapshot(String className, String message, StackTraceElement[] frames, ThrowableSnapshot cause) {
+        this.className = className;
+        this.message = message;
+        this.frames = frames;
+        this.cause = cause;
+        // Frames and causes are interned, so identity is enough for them.
+        this.hash = Objects.hash(className, message, System.identityHashCode(frames), System.identityHashCode(cause));
+    }
+
+    public static ThrowableSnapshot of(Throwable thrown) {
+        return of(thrown, 0);
+    }
+
+    private static ThrowableSnapshot of(Throwable thrown, int depth) {
+        Throwable next = thrown.getCause();
+        ThrowableSnapshot cause = next != null && next != thrown && depth < MAX_CAUSES ? of(next, depth + 1) : null;
+        return intern(new ThrowableSnapshot(
+            thrown.getClass().getName(),
+            thrown.getMessage(),
+            internFrames(thrown.getStackTrace()),
+            cause
+        ));
+    }
+
+    /**
+     * The interned snapshot with {@code id}, or null.
+     */
+    public static ThrowableSnapshot byId(int id) {
+        ThrowableSnapshot[] table = byId;
+        return id >= 0 && id < table.length ? table[id] : null;
+    }
+
+    public int id() {
+        return id;
+    }
+
+    public String className() {
+        return className;
+    }
+
+    public String message() {
+        return message;
+    }
+
+    public ThrowableSnapshot cause() {
+        return cause;
+    }
+
+    public int frameCount() {
+        return frames.length;
+    }
+
+    /**
+     * The trace as printStackTrace() would print it, one line per element.
+     * Built on the first call and shared by every entry with this snapshot.
+     */
+    public List<String> lines() {
+        List<String> result = lines;
+        if (result == null) {
+            List<String> built = new ArrayList<>();
+            appendLines(built, "", null);
+            result = Collections.unmodifiableList(built);
+            lines = result;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return message != null ? className + ": " + message : className;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof ThrowableSnapshot snapshot
+            && hash == snapshot.hash
+            && frames == snapshot.frames
+            && cause == snapshot.cause
+            && className.equals(snapshot.className)
+            && Objects.equals(message, snapshot.message);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    // Frames shared with the enclosing trace are folded into "... n more".
+    private void appendLines(List<String> out, String prefix, StackTraceElement[] enclosing) {
+        out.add(prefix + this);
+        int unique = frames.length;
+        if (enclosing != null) {
+            int j = enclosing.length - 1;
+            while (unique > 0 && j >= 0 && frames[unique - 1].equals(enclosing[j])) {
+                unique--;
+                j--;
+            }
+        }
+        for (int i = 0; i < unique; i++) {
+            out.add("\tat " + frames[i]);
+        }
+        if (unique < frames.length) {
+            out.add("\t... " + (frames.length - unique) + " more");
+        }
+        if (cause != null) {
+            cause.appendLines(out, "Caused by: ", frames);
+        }
+    }
+
+    private static StackTraceElement[] internFrames(StackTraceElement[] frames) {
+        Frames key = new Frames(frames);
+        StackTraceElement[] shared = FRAMES.get(key);
+        if (shared != null) return shared;
+        if (FRAMES.size() >= MAX_INTERNED) return frames;
+        shared = FRAMES.putIfAbsent(key, frames);
+        return shared != null ? shared : frames;
+    }
+
+    private static ThrowableSnapshot intern(ThrowableSnapshot snapshot) {
+        ThrowableSnapshot shared = INTERNED.get(snapshot);
+        if (shared != null) return shared;
+        if (INTERNED.size() >= MAX_INTERNED) return snapshot;
+        synchronized (INTERNED) {
+            shared = INTERNED.get(snapshot);
+            if (shared != null) return shared;
+            ThrowableSnapshot[] table = byId;
+            if (idCount == table.length) {
+                table = Arrays.copyOf(table, table.length * 2);
+            }
+            snapshot.id = idCount;
+            table[idCount++] = snapshot;
+            byId = table;
+            INTERNED.put(snapshot, snapshot);
+        }
+        return snapshot;
+    }
+
+    private record Frames(StackTraceElement[] frames, int hash) {
+        Frames(StackTraceElement[] frames) {
+            this(frames, Arrays.hashCode(frames));
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Frames key && hash == key.hash && Arrays.equals(frames, key.frames);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package dev.logviewer.log;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+/*
+ * Formats epoch millis as local HH:mm:ss[.SSS] the way log4j's %d{HH:mm:ss}
+ * does for latest.log. The zone offset is resolved once and reused until the
+ * next DST transition, and the text of the last second seen is kept because
+ * bursts of log lines tend to share it. Not thread-safe; use one instance per
+ * thread, see forCurrentThread().
+ */
+public final class TimestampFormatter {
+    private static final ThreadLocal<TimestampFormatter> PER_THREAD =
+        ThreadLocal.withInitial(TimestampFormatter::new);
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private final ZoneRules rules;
+    private long offsetValidFrom = Long.MAX_VALUE;
+    private long offsetValidUntil = Long.MIN_VALUE;
+    private long offsetMillis;
+
+    private final char[] chars = new char[12];
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedSecondText;
+
+    public TimestampFormatter() {
+        this(ZoneId.systemDefault());
+    }
+
+    public TimestampFormatter(ZoneId zone) {
+        this.rules = zone.getRules();
+    }
+
+    public static TimestampFormatter forCurrentThread() {
+        return PER_THREAD.get();
+    }
+
+    public String format(long epochMillis) {
+        long second = Math.floorDiv(epochMillis, 1000);
+        if (second != cachedSecond) {
+            fill(epochMillis);
+            cachedSecondText = new String(chars, 0, 8);
+            cachedSecond = second;
+        }
+        return cachedSecondText;
+    }
+
+    public String formatWithMillis(long epochMillis) {
+        fill(epochMillis);
+        return new String(chars, 0, 12);
+    }
+
+    public void formatTo(long epochMillis, boolean withMillis, StringBuilder out) {
+        fill(epochMillis);
+        out.append(chars, 0, withMillis ? 12 : 8);
+    }
+
+    private void fill(long epochMillis) {
+        long local = Math.floorMod(epochMillis + offsetAt(epochMillis), MILLIS_PER_DAY);
+        int millis = (int) (local % 1000);
+        int seconds = (int) (local / 1000);
+        put2(0, seconds / 3600);
+        chars[2] = ':';
+        put2(3, (seconds / 60) % 60);
+        chars[5] = ':';
+        put2(6, seconds % 60);
+        chars[8] = '.';
+        chars[9] = (char) ('0' + millis / 100);
+        chars[10] = (char) ('0' + (millis / 10) % 10);
+        chars[11] = (char) ('0' + millis % 10);
+    }
+
+    private void put2(int at, int value) {
+        chars[at] = (char) ('0' + value / 10);
+        chars[at + 1] = (char) ('0' + value % 10);
+    }
+
+    private long offsetAt(long epochMillis) {
+        if (epochMillis >= offsetValidFrom && epochMillis < offsetValidUntil) {
+            return offsetMillis;
+        }
+
+        Instant instant = Instant.ofEpochMilli(epochMillis);
+        offsetMillis = rules.getOffset(instant).getTotalSeconds() * 1000L;
+        if (rules.isFixedOffset()) {
+            offsetValidFrom = Long.MIN_VALUE;
+            offsetValidUntil = Long.MAX_VALUE;
+        } else {
+            // Transitions fall on whole seconds, so asking for the one before
+            // instant + 1s also finds a transition happening exactly at instant.
+            ZoneOffsetTransition previous = rules.previousTransition(instant.plusSeconds(1));
+            ZoneOffsetTransition next = rules.nextTransition(instant);
+            offsetValidFrom = previous != null ? previous.toEpochSecond() * 1000 : Long.MIN_VALUE;
+            offsetValidUntil = next != null ? next.toEpochSecond() * 1000 : Long.MAX_VALUE;
+        }
+        return offsetMillis;
+    }
+}
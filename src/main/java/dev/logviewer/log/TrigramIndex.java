@@ -0,0 +1,323 @@
+package dev.logviewer.log;
+
+import java.util.Arrays;
+
+/*
+ * Optional inverted index from case-folded character trigrams of messages to
+ * the sequences containing them. It follows the buffer incrementally: update()
+ * indexes entries appended since the last call and drops postings that fell
+ * out of the buffer. When the index outgrows its byte budget it gives up its
+ * oldest coverage instead of growing; callers scan whatever range the index
+ * does not cover.
+ *
+ * Indexing needs the final text of every message, so it formats lazily
+ * captured messages as it goes.
+ */
+public final class TrigramIndex {
+    private static volatile TrigramIndex instance;
+
+    private static final int LIST_OVERHEAD = 48;
+    private static final long EMPTY_KEY = -1L;
+
+    private final LogBuffer buffer;
+    private final long maxBytes;
+
+    private long[] keys = new long[1024];
+    private PostingList[] lists = new PostingList[1024];
+    private int listCount = 0;
+
+    private long indexedFrom = 0;
+    private long indexedUpTo = 0;
+    private long sweptAt = 0;
+    private long postingCount = 0;
+    private long allocatedBytes = 0;
+
+    private final LogSource.EntryConsumer indexer = this::index;
+
+    public TrigramIndex(LogBuffer buffer, long maxBytes) {
+        this.buffer = buffer;
+        this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+        Arrays.fill(keys, EMPTY_KEY);
+        this.allocatedBytes = tableBytes();
+    }
+
+    public static TrigramIndex getInstance() {
+        return instance;
+    }
+
+    public static void configure(LogBuffer buffer, long maxBytes) {
+        instance = new TrigramIndex(buffer, maxBytes);
+    }
+
+    public static void disable() {
+        instance = null;
+    }
+
+    public synchronized void update() {
+        long first = buffer.firstSequence();
+        if (first > indexedFrom) {
+            indexedFrom = first;
+        }
+        if (indexedUpTo < indexedFrom) {
+            indexedUpTo = indexedFrom;
+        }
+
+        long pending = buffer.nextSequence() - indexedUpTo;
+        if (pending > 0) {
+            indexedUpTo = buffer.forEachInRange(
+                indexedUpTo,
+                (int) Math.min(Integer.MAX_VALUE, pending),
+                indexer
+            );
+        }
+
+        // Sweeping touches every list, so only do it once a sizeable part of
+        // the covered range has gone stale.
+        long covered = indexedUpTo - indexedFrom;
+        if (indexedFrom - sweptAt > Math.max(1024, covered / 4)) {
+            sweep();
+        }
+        while (allocatedBytes > maxBytes && indexedFrom < indexedUpTo) {
+            indexedFrom += Math.max(1, (indexedUpTo - indexedFrom) / 4);
+            sweep();
+        }
+    }
+
+    /**
+     * Whether {@link #candidates} can narrow a search for {@code term}; terms
+     * shorter than three characters have no trigrams.
+     */
+    public static boolean canAnswer(String term) {
+        return term != null && term.length() >= 3;
+    }
+
+    /**
+     * Sequences in [coveredFrom, coveredUpTo) of the result that may contain
+     * {@code term}, case-insensitively, in ascending order. Every real match
+     * in that range is included; callers still verify each candidate.
+     */
+    public synchronized Candidates candidates(String term) {
+        update();
+
+        int length = term.length();
+        PostingList[] terms = new PostingList[length - 2];
+        int termCount = 0;
+        for (int i = 0; i + 2 < length; i++) {
+            long key = key(fold(term.charAt(i)), fold(term.charAt(i + 1)), fold(term.charAt(i + 2)));
+            int slot = find(key);
+            if (keys[slot] == EMPTY_KEY) {
+                return new Candidates(new long[0], 0, indexedFrom, indexedUpTo);
+            }
+            PostingList list = lists[slot];
+            list.trimBelow(indexedFrom);
+            if (!contains(terms, termCount, list)) {
+                terms[termCount++] = list;
+            }
+        }
+        Arrays.sort(terms, 0, termCount, (a, b) -> Integer.compare(a.size(), b.size()));
+
+        PostingList smallest = terms[0];
+        long[] result = Arrays.copyOfRange(smallest.sequences, smallest.start, smallest.end);
+        int size = result.length;
+        for (int t = 1; t < termCount && size > 0; t++) {
+            size = intersect(result, size, terms[t]);
+        }
+        return new Candidates(result, size, indexedFrom, indexedUpTo);
+    }
+
+    public synchronized long memoryBytes() {
+        return allocatedBytes;
+    }
+
+    public synchronized long postingCount() {
+        return postingCount;
+    }
+
+    public synchronized long coveredFrom() {
+        return indexedFrom;
+    }
+
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    private void index(long seq, LogEntry entry) {
+        String text = entry.message();
+        int length = text.length();
+        if (length < 3) return;
+
+        char a = fold(text.charAt(0));
+        char b = fold(text.charAt(1));
+        for (int i = 2; i < length; i++) {
+            char c = fold(text.charAt(i));
+            add(key(a, b, c), seq);
+            a = b;
+            b = c;
+        }
+    }
+
+    private void add(long key, long seq) {
+        int slot = find(key);
+        PostingList list = lists[slot];
+        if (keys[slot] == EMPTY_KEY) {
+            list = new PostingList();
+            keys[slot] = key;
+            lists[slot] = list;
+            listCount++;
+            allocatedBytes += LIST_OVERHEAD + list.sequences.length * 8L;
+            if (listCount * 2 > keys.length) {
+                rehash(keys.length * 2);
+            }
+        }
+        allocatedBytes += list.append(seq);
+        postingCount++;
+    }
+
+    private void sweep() {
+        long[] oldKeys = keys;
+        PostingList[] oldLists = lists;
+        int capacity = keys.length;
+        while (capacity > 1024 && listCount * 8 < capacity) {
+            capacity /= 2;
+        }
+        keys = new long[capacity];
+        lists = new PostingList[capacity];
+        Arrays.fill(keys, EMPTY_KEY);
+        listCount = 0;
+        postingCount = 0;
+        allocatedBytes = tableBytes();
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY_KEY) continue;
+            PostingList list = oldLists[i];
+            list.trimBelow(indexedFrom);
+            if (list.size() == 0) continue;
+            list.shrink();
+
+            int slot = find(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            lists[slot] = list;
+            listCount++;
+            postingCount += list.size();
+            allocatedBytes += LIST_OVERHEAD + list.sequences.length * 8L;
+        }
+        sweptAt = indexedFrom;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        PostingList[] oldLists = lists;
+        allocatedBytes -= tableBytes();
+        keys = new long[capacity];
+        lists = new PostingList[capacity];
+        Arrays.fill(keys, EMPTY_KEY);
+        allocatedBytes += tableBytes();
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY_KEY) continue;
+            int slot = find(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            lists[slot] = oldLists[i];
+        }
+    }
+
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int slot = (int) (mix(key) & mask);
+        while (keys[slot] != EMPTY_KEY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private long tableBytes() {
+        return keys.length * 12L;
+    }
+
+    private static int intersect(long[] result, int size, PostingList list) {
+        int kept = 0;
+        int from = list.start;
+        for (int i = 0; i < size; i++) {
+            int found = Arrays.binarySearch(list.sequences, from, list.end, result[i]);
+            if (found >= 0) {
+                result[kept++] = result[i];
+                from = found + 1;
+            } else {
+                from = -found - 1;
+            }
+            if (from >= list.end) break;
+        }
+        return kept;
+    }
+
+    private static boolean contains(PostingList[] lists, int count, PostingList list) {
+        for (int i = 0; i < count; i++) {
+            if (lists[i] == list) return true;
+        }
+        return false;
+    }
+
+    // Same folding String.regionMatches(true, ...) applies, so candidates
+    // never miss what LogEntry.matchesText would accept.
+    static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static long key(char a, char b, char c) {
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    private static long mix(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return key ^ (key >>> 29);
+    }
+
+    public record Candidates(long[] sequences, int size, long coveredFrom, long coveredUpTo) {}
+
+    private static final class PostingList {
+        long[] sequences = new long[4];
+        int start = 0;
+        int end = 0;
+
+        int size() {
+            return end - start;
+        }
+
+        // Returns the number of bytes newly allocated.
+        long append(long seq) {
+            if (end > start && sequences[end - 1] == seq) return 0;
+            long grown = 0;
+            if (end == sequences.length) {
+                int count = end - start;
+                if (start > sequences.length / 2) {
+                    System.arraycopy(sequences, start, sequences, 0, count);
+                } else {
+                    long[] larger = new long[sequences.length * 2];
+                    System.arraycopy(sequences, start, larger, 0, count);
+                    grown = (larger.length - sequences.length) * 8L;
+                    sequences = larger;
+                }
+                start = 0;
+                end = count;
+            }
+            sequences[end++] = seq;
+            return grown;
+        }
+
+        void trimBelow(long floor) {
+            if (start < end && sequences[start] < floor) {
+                int found = Arrays.binarySearch(sequences, start, end, floor);
+                start = found >= 0 ? found : -found - 1;
+            }
+        }
+
+        void shrink() {
+            int count = size();
+            int capacity = Math.max(4, Integer.highestOneBit(Math.max(1, count - 1)) << 1);
+            if (capacity < sequences.length || start > 0) {
+                sequences = Arrays.copyOfRange(sequences, start, start + capacity);
+                start = 0;
+                end = count;
+            }
+        }
+    }
+}